@@ -3,6 +3,16 @@ package mocha.foundation;
 import java.util.Arrays;
 
 public final class IndexPath extends MObject implements Copying<IndexPath>, Comparable<IndexPath> {
+	// Two level section/row cache of shared instances, bounded to
+	// CACHED_SECTIONS x CACHED_ROWS.  Cached instances are never evicted, so
+	// only the first rows of each section are shared, rows past them are
+	// allocated.  Row arrays grow as rows are used.  IndexPaths are
+	// immutable, so racing writers at worst create an extra instance that
+	// compares equal.
+	private static final int CACHED_SECTIONS = 64;
+	private static final int CACHED_ROWS = 256;
+	private static final IndexPath[][] cache = new IndexPath[CACHED_SECTIONS][];
+
 	private final int[] indexes;
 	private final int hashCode;
 
@@ -46,9 +56,11 @@ public final class IndexPath extends MObject implements Copying<IndexPath>, Comp
 	 * @return IndexPath
 	 */
 	public static IndexPath withIndexes(int... indexes) {
-		int hashCode = Arrays.hashCode(indexes);
-		// TODO: Effecient cache/reusing
-		return new IndexPath(hashCode, indexes);
+		if (indexes.length == 2) {
+			return withRowInSection(indexes[1], indexes[0]);
+		} else {
+			return new IndexPath(Arrays.hashCode(indexes), indexes);
+		}
 	}
 
 	public IndexPath(int index) {
@@ -105,16 +117,43 @@ public final class IndexPath extends MObject implements Copying<IndexPath>, Comp
 
 	/**
 	 * Convenience method to create a row/section IndexPath
+	 * <p/>
+	 * Index paths for the first rows of the first sections are shared
+	 * rather than created on every call.
 	 */
 	public static IndexPath withRowInSection(int row, int section) {
-		return withIndexes(section, row);
+		if (section < 0 || section >= CACHED_SECTIONS || row < 0 || row >= CACHED_ROWS) {
+			return new IndexPath(new int[]{section, row});
+		}
+
+		IndexPath[] rows = cache[section];
+
+		if (rows == null || row >= rows.length) {
+			int length = rows == null ? 16 : rows.length;
+
+			while (length <= row) {
+				length <<= 1;
+			}
+
+			rows = rows == null ? new IndexPath[length] : Arrays.copyOf(rows, length);
+			cache[section] = rows;
+		}
+
+		IndexPath indexPath = rows[row];
+
+		if (indexPath == null) {
+			indexPath = new IndexPath(new int[]{section, row});
+			rows[row] = indexPath;
+		}
+
+		return indexPath;
 	}
 
 	/**
 	 * Convenience method to create an item/section IndexPath
 	 */
 	public static IndexPath withItemInSection(int item, int section) {
-		return withIndexes(section, item);
+		return withRowInSection(item, section);
 	}
 
 	/**
@@ -149,7 +188,16 @@ public final class IndexPath extends MObject implements Copying<IndexPath>, Comp
 
 	@Override
 	public boolean equals(java.lang.Object object) {
-		return object != null && (object == this || (object instanceof IndexPath && this.hashCode == ((IndexPath) object).hashCode));
+		if (object == this) {
+			return true;
+		} else if (object instanceof IndexPath) {
+			IndexPath other = (IndexPath) object;
+
+			// Hash codes only rule out a match, the indexes decide it
+			return this.hashCode == other.hashCode && this.section == other.section && this.row == other.row && Arrays.equals(this.indexes, other.indexes);
+		} else {
+			return false;
+		}
 	}
 
 	@Override
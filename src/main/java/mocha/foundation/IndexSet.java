@@ -1,65 +1,643 @@
 package mocha.foundation;
 
+import java.util.AbstractSet;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
-// TODO: Explore not using HashSet for this.
+/**
+ * A set of non-negative indexes, stored as a sorted list of ranges.
+ * <p/>
+ * Contiguous indexes share a single range, so a set of a million
+ * consecutive rows takes the same space as a set of one.  Lookups are
+ * binary searches over the ranges, the first and last index are read
+ * directly, and the primitive methods never box.  The set can still be
+ * used anywhere a {@code Set<Integer>} is expected.
+ */
+public class IndexSet extends AbstractSet<Integer> implements Copying<IndexSet> {
+	private static final int DEFAULT_CAPACITY = 4;
 
-public class IndexSet extends HashSet<Integer> {
+	// Range i covers [starts[i], ends[i]), ranges are sorted,
+	// never empty and never overlap or touch each other.
+	private int[] starts;
+	private int[] ends;
+	private int rangeCount;
+	private int count;
+	private int modifications;
 
-	public IndexSet() {
+	/**
+	 * Iterates the indexes of a set in ascending order without boxing
+	 */
+	public final class IndexIterator {
+		private int range;
+		private int next;
+		private final int expectedModifications = modifications;
+
+		private IndexIterator() {
+			this.next = rangeCount > 0 ? starts[0] : -1;
+		}
+
+		public boolean hasNext() {
+			return this.range < rangeCount;
+		}
+
+		public int next() {
+			if (this.expectedModifications != modifications) {
+				throw new ConcurrentModificationException();
+			}
+
+			if (this.range >= rangeCount) {
+				throw new NoSuchElementException();
+			}
+
+			int index = this.next++;
+
+			if (this.next == ends[this.range] && ++this.range < rangeCount) {
+				this.next = starts[this.range];
+			}
+
+			return index;
+		}
+	}
 
+	public IndexSet() {
+		this(DEFAULT_CAPACITY);
 	}
 
+	/**
+	 * @param capacity number of ranges to allocate room for
+	 */
 	public IndexSet(int capacity) {
-		super(capacity);
+		capacity = Math.max(1, capacity);
+		this.starts = new int[capacity];
+		this.ends = new int[capacity];
 	}
 
 	public IndexSet(Collection<? extends Integer> collection) {
-		super(collection);
+		this();
+
+		if (collection instanceof IndexSet) {
+			this.addIndexes((IndexSet) collection);
+		} else {
+			this.addAll(collection);
+		}
 	}
 
 	public IndexSet(Range range) {
-		super((int) range.length);
+		this();
+		this.addIndexesInRange(range);
+	}
+
+	public IndexSet(int location, int length) {
+		this();
+		this.addIndexesInRange(location, length);
+	}
+
+	/**
+	 * @return number of indexes in the set
+	 */
+	public int size() {
+		return this.count;
+	}
+
+	/**
+	 * @return number of ranges the indexes are stored in
+	 */
+	public int getRangeCount() {
+		return this.rangeCount;
+	}
 
-		long length = range.max();
-		for (long i = range.location; i < length; i++) {
-			this.add((int) i);
+	/**
+	 * Get one of the ranges the indexes are stored in
+	 *
+	 * @param rangeIndex index of the range, in [0, getRangeCount())
+	 *
+	 * @return Range of contiguous indexes
+	 */
+	public Range getRange(int rangeIndex) {
+		if (rangeIndex < 0 || rangeIndex >= this.rangeCount) {
+			throw new IndexOutOfBoundsException("Range " + rangeIndex + " out of bounds for " + this.rangeCount + " ranges.");
 		}
+
+		return new Range(this.starts[rangeIndex], this.ends[rangeIndex] - this.starts[rangeIndex]);
 	}
 
+	/**
+	 * @return first index in the set, or -1 if empty
+	 */
 	public int getFirstIndex() {
-		int size = this.size();
+		return this.rangeCount > 0 ? this.starts[0] : -1;
+	}
+
+	/**
+	 * @return last index in the set, or -1 if empty
+	 */
+	public int getLastIndex() {
+		return this.rangeCount > 0 ? this.ends[this.rangeCount - 1] - 1 : -1;
+	}
 
-		if (size > 0) {
-			return this.toIntArray()[0];
+	/**
+	 * @param index index to compare to
+	 *
+	 * @return closest index in the set greater than index, or -1 if there is none
+	 */
+	public int getIndexGreaterThan(int index) {
+		if (index < 0) {
+			return this.getFirstIndex();
+		}
+
+		int range = this.rangeAtOrBefore(index);
+
+		if (range >= 0 && index + 1 < this.ends[range]) {
+			return index + 1;
+		} else if (range + 1 < this.rangeCount) {
+			return this.starts[range + 1];
 		} else {
 			return -1;
 		}
 	}
 
-	public int getLastIndex() {
-		int size = this.size();
+	/**
+	 * @param index index to compare to
+	 *
+	 * @return closest index in the set less than index, or -1 if there is none
+	 */
+	public int getIndexLessThan(int index) {
+		if (index <= 0) {
+			return -1;
+		}
 
-		if (size > 0) {
-			return this.toIntArray()[size - 1];
-		} else {
+		int range = this.rangeAtOrBefore(index - 1);
+
+		if (range < 0) {
 			return -1;
+		} else {
+			return Math.min(index - 1, this.ends[range] - 1);
 		}
 	}
 
-	public int[] toIntArray() {
-		int[] array = new int[this.size()];
+	/**
+	 * @param index index to check for
+	 *
+	 * @return true if the set contains index
+	 */
+	public boolean containsIndex(int index) {
+		int range = this.rangeAtOrBefore(index);
+		return range >= 0 && index < this.ends[range];
+	}
 
-		int idx = 0;
-		for (Integer i : this) {
-			array[idx++] = i;
+	/**
+	 * @param location first index of the range
+	 * @param length   length of the range
+	 *
+	 * @return true if the set contains every index in the range
+	 */
+	public boolean containsIndexesInRange(int location, int length) {
+		if (length <= 0) {
+			return true;
+		}
+
+		int range = this.rangeAtOrBefore(location);
+		return range >= 0 && location + length <= this.ends[range];
+	}
+
+	/**
+	 * @param indexSet indexes to check for
+	 *
+	 * @return true if the set contains every index in indexSet
+	 */
+	public boolean containsIndexes(IndexSet indexSet) {
+		for (int i = 0; i < indexSet.rangeCount; i++) {
+			if (!this.containsIndexesInRange(indexSet.starts[i], indexSet.ends[i] - indexSet.starts[i])) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @param location first index of the range
+	 * @param length   length of the range
+	 *
+	 * @return number of indexes in the set that fall within the range
+	 */
+	public int countOfIndexesInRange(int location, int length) {
+		int end = location + length;
+		int total = 0;
+
+		for (int range = Math.max(0, this.rangeAtOrBefore(location)); range < this.rangeCount && this.starts[range] < end; range++) {
+			total += Math.max(0, Math.min(end, this.ends[range]) - Math.max(location, this.starts[range]));
+		}
+
+		return total;
+	}
+
+	/**
+	 * Add a single index
+	 *
+	 * @param index index to add
+	 *
+	 * @return true if the set didn't already contain index
+	 */
+	public boolean addIndex(int index) {
+		int count = this.count;
+		this.addIndexesInRange(index, 1);
+		return this.count != count;
+	}
+
+	public void addIndexesInRange(Range range) {
+		this.addIndexesInRange((int) range.location, (int) range.length);
+	}
+
+	/**
+	 * Add every index in a range
+	 *
+	 * @param location first index to add
+	 * @param length   number of indexes to add
+	 */
+	public void addIndexesInRange(int location, int length) {
+		if (length <= 0) {
+			return;
+		}
+
+		if (location < 0) {
+			throw new RuntimeException("IndexSet can only contain non-negative indexes, tried to add " + location + ".");
+		}
+
+		int end = location + length;
+
+		// First range that ends at or after location (touching ranges merge),
+		// and last range that starts at or before end.
+		int first = this.firstRangeEndingAtOrAfter(location);
+		int last = this.rangeAtOrBefore(end);
+
+		if (first > last) {
+			this.insertRange(first, location, end);
+			this.count += length;
+		} else {
+			int start = Math.min(location, this.starts[first]);
+			int merged = Math.max(end, this.ends[last]);
+			int removed = 0;
+
+			for (int range = first; range <= last; range++) {
+				removed += this.ends[range] - this.starts[range];
+			}
+
+			this.starts[first] = start;
+			this.ends[first] = merged;
+			this.deleteRanges(first + 1, last - first);
+			this.count += (merged - start) - removed;
+		}
+
+		this.modifications++;
+	}
+
+	/**
+	 * Add every index in another set
+	 *
+	 * @param indexSet indexes to add
+	 */
+	public void addIndexes(IndexSet indexSet) {
+		for (int i = 0; i < indexSet.rangeCount; i++) {
+			this.addIndexesInRange(indexSet.starts[i], indexSet.ends[i] - indexSet.starts[i]);
+		}
+	}
+
+	/**
+	 * Remove a single index
+	 *
+	 * @param index index to remove
+	 *
+	 * @return true if the set contained index
+	 */
+	public boolean removeIndex(int index) {
+		int count = this.count;
+		this.removeIndexesInRange(index, 1);
+		return this.count != count;
+	}
+
+	public void removeIndexesInRange(Range range) {
+		this.removeIndexesInRange((int) range.location, (int) range.length);
+	}
+
+	/**
+	 * Remove every index in a range
+	 *
+	 * @param location first index to remove
+	 * @param length   number of indexes to remove
+	 */
+	public void removeIndexesInRange(int location, int length) {
+		if (length <= 0 || this.rangeCount == 0) {
+			return;
+		}
+
+		int end = location + length;
+		int first = this.firstRangeEndingAtOrAfter(location + 1);
+		int last = this.rangeAtOrBefore(end - 1);
+
+		if (first > last) {
+			return;
+		}
+
+		int headStart = this.starts[first];
+		int tailEnd = this.ends[last];
+		int removed = 0;
+
+		for (int range = first; range <= last; range++) {
+			removed += this.ends[range] - this.starts[range];
+		}
+
+		boolean keepHead = headStart < location;
+		boolean keepTail = tailEnd > end;
+		int kept = (keepHead ? 1 : 0) + (keepTail ? 1 : 0);
+		int replaced = last - first + 1;
+
+		if (kept > replaced) {
+			this.insertRange(first + 1, end, tailEnd);
+		} else {
+			this.deleteRanges(first + kept, replaced - kept);
 		}
 
-		Arrays.sort(array);
+		int range = first;
+
+		if (keepHead) {
+			this.starts[range] = headStart;
+			this.ends[range] = location;
+			removed -= location - headStart;
+			range++;
+		}
+
+		if (keepTail) {
+			this.starts[range] = end;
+			this.ends[range] = tailEnd;
+			removed -= tailEnd - end;
+		}
+
+		this.count -= removed;
+		this.modifications++;
+	}
+
+	/**
+	 * Remove every index in another set
+	 *
+	 * @param indexSet indexes to remove
+	 */
+	public void removeIndexes(IndexSet indexSet) {
+		for (int i = indexSet.rangeCount - 1; i >= 0; i--) {
+			this.removeIndexesInRange(indexSet.starts[i], indexSet.ends[i] - indexSet.starts[i]);
+		}
+	}
+
+	/**
+	 * Shift indexes to account for items being inserted or removed, such as
+	 * rows in a table view.
+	 * <p/>
+	 * With a positive delta, every index greater than or equal to index moves
+	 * up by delta.  With a negative delta, the indexes in [index + delta, index)
+	 * are removed and every index greater than or equal to index moves down by
+	 * -delta.
+	 *
+	 * @param index first index to shift
+	 * @param delta amount to shift by
+	 */
+	public void shiftIndexesStartingAtIndex(int index, int delta) {
+		if (delta < 0) {
+			if (index + delta < 0) {
+				throw new RuntimeException("Can not shift index " + index + " by " + delta + ", indexes can't be negative.");
+			}
+
+			this.removeIndexesInRange(index + delta, -delta);
+		}
+
+		if (delta == 0 || this.rangeCount == 0 || index > this.getLastIndex()) {
+			return;
+		}
+
+		int range = this.rangeAtOrBefore(index);
+
+		if (range >= 0 && this.starts[range] < index && index < this.ends[range]) {
+			// Split the range index falls in, only its upper part moves
+			this.insertRange(range + 1, index, this.ends[range]);
+			this.ends[range] = index;
+			range++;
+		} else if (range < 0 || this.starts[range] < index) {
+			range++;
+		}
+
+		for (int i = range; i < this.rangeCount; i++) {
+			this.starts[i] += delta;
+			this.ends[i] += delta;
+		}
+
+		// Moving down can make the shifted ranges touch the ones below
+		if (delta < 0 && range > 0 && range < this.rangeCount && this.ends[range - 1] == this.starts[range]) {
+			this.ends[range - 1] = this.ends[range];
+			this.deleteRanges(range, 1);
+		}
+
+		this.modifications++;
+	}
+
+	/**
+	 * @return iterator over the indexes in ascending order, without boxing
+	 */
+	public IndexIterator indexIterator() {
+		return new IndexIterator();
+	}
+
+	/**
+	 * @return indexes in ascending order
+	 */
+	public int[] toIntArray() {
+		int[] array = new int[this.count];
+		int idx = 0;
+
+		for (int range = 0; range < this.rangeCount; range++) {
+			for (int index = this.starts[range]; index < this.ends[range]; index++) {
+				array[idx++] = index;
+			}
+		}
 
 		return array;
 	}
 
+	public IndexSet copy() {
+		IndexSet copy = new IndexSet(this.rangeCount);
+		System.arraycopy(this.starts, 0, copy.starts, 0, this.rangeCount);
+		System.arraycopy(this.ends, 0, copy.ends, 0, this.rangeCount);
+		copy.rangeCount = this.rangeCount;
+		copy.count = this.count;
+		return copy;
+	}
+
+	// Set<Integer>
+
+	public boolean contains(Object o) {
+		return o instanceof Integer && this.containsIndex((Integer) o);
+	}
+
+	public boolean add(Integer index) {
+		return this.addIndex(index);
+	}
+
+	public boolean remove(Object o) {
+		return o instanceof Integer && this.removeIndex((Integer) o);
+	}
+
+	public void clear() {
+		this.rangeCount = 0;
+		this.count = 0;
+		this.modifications++;
+	}
+
+	public Iterator<Integer> iterator() {
+		return new Iterator<Integer>() {
+			private int next = getFirstIndex();
+			private int last = -1;
+
+			public boolean hasNext() {
+				return this.next >= 0;
+			}
+
+			public Integer next() {
+				if (this.next < 0) {
+					throw new NoSuchElementException();
+				}
+
+				this.last = this.next;
+				this.next = getIndexGreaterThan(this.next);
+				return this.last;
+			}
+
+			public void remove() {
+				if (this.last < 0) {
+					throw new IllegalStateException();
+				}
+
+				removeIndex(this.last);
+				this.last = -1;
+			}
+		};
+	}
+
+	public boolean equals(Object o) {
+		if (o == this) {
+			return true;
+		} else if (o instanceof IndexSet) {
+			IndexSet indexSet = (IndexSet) o;
+
+			if (indexSet.rangeCount != this.rangeCount) {
+				return false;
+			}
+
+			for (int i = 0; i < this.rangeCount; i++) {
+				if (indexSet.starts[i] != this.starts[i] || indexSet.ends[i] != this.ends[i]) {
+					return false;
+				}
+			}
+
+			return true;
+		} else {
+			return super.equals(o);
+		}
+	}
+
+	public int hashCode() {
+		// Same value as summing every Integer's hash, without visiting every index
+		long hashCode = 0;
+
+		for (int i = 0; i < this.rangeCount; i++) {
+			long length = this.ends[i] - this.starts[i];
+			long sum = (long) this.starts[i] + this.ends[i] - 1;
+			hashCode += length % 2 == 0 ? (length / 2) * sum : length * (sum / 2);
+		}
+
+		return (int) hashCode;
+	}
+
+	public String toString() {
+		StringBuilder builder = new StringBuilder("[");
+
+		for (int i = 0; i < this.rangeCount; i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+
+			builder.append(this.starts[i]);
+
+			if (this.ends[i] - this.starts[i] > 1) {
+				builder.append('-').append(this.ends[i] - 1);
+			}
+		}
+
+		return builder.append(']').toString();
+	}
+
+	/**
+	 * @return last range starting at or before index, or -1 if there isn't one
+	 */
+	private int rangeAtOrBefore(int index) {
+		int low = 0;
+		int high = this.rangeCount - 1;
+
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+
+			if (this.starts[mid] <= index) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+
+		return high;
+	}
+
+	/**
+	 * @return first range ending at or after index, or rangeCount if there isn't one
+	 */
+	private int firstRangeEndingAtOrAfter(int index) {
+		int low = 0;
+		int high = this.rangeCount - 1;
+
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+
+			if (this.ends[mid] < index) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+
+		return low;
+	}
+
+	private void insertRange(int position, int start, int end) {
+		if (this.rangeCount == this.starts.length) {
+			int capacity = this.rangeCount * 2;
+			this.starts = Arrays.copyOf(this.starts, capacity);
+			this.ends = Arrays.copyOf(this.ends, capacity);
+		}
+
+		System.arraycopy(this.starts, position, this.starts, position + 1, this.rangeCount - position);
+		System.arraycopy(this.ends, position, this.ends, position + 1, this.rangeCount - position);
+		this.starts[position] = start;
+		this.ends[position] = end;
+		this.rangeCount++;
+	}
+
+	private void deleteRanges(int position, int length) {
+		if (length <= 0) {
+			return;
+		}
+
+		System.arraycopy(this.starts, position + length, this.starts, position, this.rangeCount - position - length);
+		System.arraycopy(this.ends, position + length, this.ends, position, this.rangeCount - position - length);
+		this.rangeCount -= length;
+	}
+
 }
@@ -0,0 +1,7 @@
+package mocha.foundation;
+
+public interface IndexedBlock {
+
+	void block(int index);
+
+}
@@ -3,12 +3,20 @@ package mocha.foundation;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
-
+import mocha.foundation.concurrent.Priority;
+import mocha.foundation.concurrent.Queue;
+import mocha.foundation.concurrent.TimerWheel;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Semaphore;
 
 public class MObject {
 	private static ThreadLocal<Handler> handler = new ThreadLocal<Handler>();
 	private static Handler mainHandler;
+	private static final Map<Runnable, Set<DelayedCallback>> delayedCallbacks = new HashMap<Runnable, Set<DelayedCallback>>();
 	private static String LOG_TAG = "Mocha";
 	private static boolean loggingEnabled = true;
 
@@ -35,6 +43,33 @@ public class MObject {
 		}
 	}
 
+	/**
+	 * Callback scheduled on the shared {@link TimerWheel} by {@link #performAfterDelay}
+	 * from a thread without a looper.  Pending schedules of the same callback are kept
+	 * together so {@link #cancelCallbacks} can cancel all of them, like Handler#removeCallbacks,
+	 * and each one removes itself when it fires.  All guarded by delayedCallbacks.
+	 */
+	private static class DelayedCallback implements Runnable {
+		final Runnable callback;
+		TimerWheel.Timeout timeout;
+
+		DelayedCallback(Runnable callback) {
+			this.callback = callback;
+		}
+
+		public void run() {
+			synchronized (delayedCallbacks) {
+				Set<DelayedCallback> pending = delayedCallbacks.get(this.callback);
+
+				if (pending != null && pending.remove(this) && pending.isEmpty()) {
+					delayedCallbacks.remove(this.callback);
+				}
+			}
+
+			this.callback.run();
+		}
+	}
+
 	public static boolean isLoggingEnabled() {
 		return loggingEnabled;
 	}
@@ -121,6 +156,12 @@ public class MObject {
 
 	/**
 	 * Run a callback after a delay on the current thread.
+	 * <p/>
+	 * If the current thread doesn't have a looper, such as a thread owned by
+	 * a background queue, the callback is instead run on the current queue,
+	 * so a serial queue's callbacks still never run alongside its tasks.
+	 * Without a current queue either, it's run on the default global
+	 * concurrent queue.
 	 *
 	 * @param delayInMillis milliseconds before the callback should be called
 	 * @param callback      callback to be called after a delay
@@ -132,10 +173,33 @@ public class MObject {
 		// If we're on the main looper, there's no sense in creating
 		// another local looper/thread just for this.
 
-		if (Looper.myLooper() == getMainHandler().getLooper()) {
+		Looper looper = Looper.myLooper();
+
+		if (looper == getMainHandler().getLooper()) {
 			getMainHandler().postDelayed(callback, delayInMillis);
-		} else {
+		} else if (looper != null) {
 			getHandler().postDelayed(callback, delayInMillis);
+		} else {
+			// Scheduled while holding the lock, so the callback can't fire
+			// and look for itself before it's been added.
+			synchronized (delayedCallbacks) {
+				Set<DelayedCallback> pending = delayedCallbacks.get(callback);
+
+				if (pending == null) {
+					pending = new HashSet<DelayedCallback>(2);
+					delayedCallbacks.put(callback, pending);
+				}
+
+				Queue queue = Queue.current();
+
+				if (queue == null) {
+					queue = Queue.concurrent(Priority.DEFAULT);
+				}
+
+				DelayedCallback delayedCallback = new DelayedCallback(callback);
+				delayedCallback.timeout = TimerWheel.get().schedule(delayInMillis, queue, delayedCallback);
+				pending.add(delayedCallback);
+			}
 		}
 
 		return callback;
@@ -211,6 +275,18 @@ public class MObject {
 		if (handler != null) {
 			handler.removeCallbacks(runnable);
 		}
+
+		Set<DelayedCallback> pending;
+
+		synchronized (delayedCallbacks) {
+			pending = delayedCallbacks.remove(runnable);
+		}
+
+		if (pending != null) {
+			for (DelayedCallback delayedCallback : pending) {
+				delayedCallback.timeout.cancel();
+			}
+		}
 	}
 
 	public static void MLog(LogLevel logLevel, String message) {
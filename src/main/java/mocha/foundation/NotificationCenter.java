@@ -1,12 +1,21 @@
 package mocha.foundation;
 
-import android.util.SparseArray;
+import mocha.foundation.concurrent.ConcurrentQueue;
+import mocha.foundation.concurrent.Queue;
+import mocha.foundation.concurrent.SerialQueue;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class NotificationCenter extends MObject {
 
@@ -15,7 +24,8 @@ public class NotificationCenter extends MObject {
 		 * Called by notification center when a notification is posted that
 		 * matches the criteria for what we're observing.
 		 * <p/>
-		 * This will be called on the thread that posted the notification,
+		 * This will be called on the observer's delivery queue if it was
+		 * added with one, otherwise on the thread that posted the notification,
 		 * not the thread that the observer was added on.
 		 *
 		 * @param notification notification posted
@@ -23,28 +33,284 @@ public class NotificationCenter extends MObject {
 		public void observe(Notification notification);
 	}
 
+	private static final Observation[] EMPTY = new Observation[0];
+	private static final int PURGE_LIMIT = 32;
+
+	/**
+	 * Weak reference to an observer, enqueued once it's been GC'd so
+	 * its observation can be purged.
+	 */
+	private static final class ObserverReference<T> extends WeakReference<T> {
+		final Observation observation;
+
+		ObserverReference(T referent, Observation observation, ReferenceQueue<? super T> referenceQueue) {
+			super(referent, referenceQueue);
+			this.observation = observation;
+		}
+	}
+
 	private static class Observation {
-		WeakReference<java.lang.Object> target;
-		Method method;
-		boolean methodTakesNotificationParameter;
+		final ObserverReference<java.lang.Object> target;
+		final Method method;
+		final boolean methodTakesNotificationParameter;
+
+		final ObserverReference<Observer> observer;
+		final WeakReference<java.lang.Object> sender;
+
+		final String name;
+
+		// Queue the observer asked for, and the queue deliveries are actually
+		// posted to, which keeps them in order for concurrent delivery queues.
+		final Queue deliveryQueue;
+		final Queue queue;
+
+		// Sender observations this observation was added to, guarded by the notification center's lock
+		SenderObservations senderObservations;
+
+		Observation(Observer observer, String name, java.lang.Object sender, Queue deliveryQueue, ReferenceQueue<java.lang.Object> referenceQueue) {
+			this.observer = new ObserverReference<Observer>(observer, this, referenceQueue);
+			this.target = null;
+			this.method = null;
+			this.methodTakesNotificationParameter = false;
+			this.name = name;
+			this.sender = sender == null ? null : new WeakReference<java.lang.Object>(sender);
+			this.deliveryQueue = deliveryQueue;
+			this.queue = serialized(deliveryQueue);
+		}
 
-		WeakReference<Observer> observer;
-		WeakReference<java.lang.Object> sender;
+		Observation(java.lang.Object target, Method method, boolean methodTakesNotificationParameter, String name, java.lang.Object sender, Queue deliveryQueue, ReferenceQueue<java.lang.Object> referenceQueue) {
+			this.observer = null;
+			this.target = new ObserverReference<java.lang.Object>(target, this, referenceQueue);
+			this.method = method;
+			this.methodTakesNotificationParameter = methodTakesNotificationParameter;
+			this.name = name;
+			this.sender = sender == null ? null : new WeakReference<java.lang.Object>(sender);
+			this.deliveryQueue = deliveryQueue;
+			this.queue = serialized(deliveryQueue);
+		}
 
-		String name;
+		private static Queue serialized(Queue deliveryQueue) {
+			if (deliveryQueue instanceof ConcurrentQueue) {
+				SerialQueue queue = new SerialQueue("mocha.foundation.notification.delivery");
+				queue.setTargetQueue(deliveryQueue);
+				return queue;
+			} else {
+				return deliveryQueue;
+			}
+		}
 
 		boolean isObserving(String name, java.lang.Object sender) {
 			boolean nameMatch = name == null || (this.name != null && this.name.equals(name));
 			boolean senderMatch = sender == null || this.sender == null || (this.sender.get() == sender);
 			return nameMatch && senderMatch;
 		}
+
+		java.lang.Object getObserver() {
+			return this.observer != null ? this.observer.get() : this.target.get();
+		}
+
+		boolean isEquivalent(Observation observation) {
+			java.lang.Object observer = this.getObserver();
+
+			return observer != null && observer == observation.getObserver() && this.method == observation.method && this.deliveryQueue == observation.deliveryQueue &&
+					(this.name == null ? observation.name == null : this.name.equals(observation.name)) &&
+					(this.sender == null ? observation.sender == null : observation.sender != null && this.sender.get() == observation.sender.get());
+		}
+
+		void deliver(final Notification notification) {
+			if (this.queue == null) {
+				this.deliverNow(notification);
+			} else {
+				this.queue.post(new Runnable() {
+					public void run() {
+						deliverNow(notification);
+					}
+				});
+			}
+		}
+
+		private void deliverNow(Notification notification) {
+			if (this.observer != null) {
+				Observer observer = this.observer.get();
+
+				// GC'd observers are skipped, their observations are purged on the next post
+				if (observer != null) {
+					observer.observe(notification);
+				}
+			} else {
+				java.lang.Object target = this.target.get();
+
+				if (target != null) {
+					try {
+						if (this.methodTakesNotificationParameter) {
+							this.method.invoke(target, notification);
+						} else {
+							this.method.invoke(target);
+						}
+					} catch (IllegalAccessException e) {
+						MWarn(e, "Could not post notification %s to %s#%s", notification.getName(), target, this.method);
+					} catch (InvocationTargetException e) {
+						throw new RuntimeException(String.format("Exception posting notification %s to %s#%s", notification.getName(), target, this.method), e);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Observations for a single sender, split by the name they observe.
+	 * Keyed weakly by the sender itself.
+	 */
+	private static final class SenderObservations extends WeakReference<java.lang.Object> {
+		final int hash;
+		volatile SenderObservations next;
+		volatile Observation[] observationsForAnyName = EMPTY;
+		final ConcurrentHashMap<String, Observation[]> observationsByName = new ConcurrentHashMap<String, Observation[]>(4);
+
+		SenderObservations(java.lang.Object sender, int hash, SenderObservations next, ReferenceQueue<java.lang.Object> referenceQueue) {
+			super(sender, referenceQueue);
+			this.hash = hash;
+			this.next = next;
+		}
+
+		boolean isEmpty() {
+			return this.observationsForAnyName.length == 0 && this.observationsByName.isEmpty();
+		}
+	}
+
+	/**
+	 * Hash table of sender observations, compared by identity and keyed
+	 * weakly.  Lookups don't lock or allocate, all changes are made while
+	 * holding the notification center's lock.
+	 */
+	private static final class SenderTable {
+		private final ReferenceQueue<java.lang.Object> referenceQueue;
+		private volatile AtomicReferenceArray<SenderObservations> buckets = new AtomicReferenceArray<SenderObservations>(16);
+		private int count;
+
+		SenderTable(ReferenceQueue<java.lang.Object> referenceQueue) {
+			this.referenceQueue = referenceQueue;
+		}
+
+		SenderObservations get(java.lang.Object sender) {
+			int hash = System.identityHashCode(sender);
+			AtomicReferenceArray<SenderObservations> buckets = this.buckets;
+
+			for (SenderObservations entry = buckets.get(hash & (buckets.length() - 1)); entry != null; entry = entry.next) {
+				if (entry.hash == hash && entry.get() == sender) {
+					return entry;
+				}
+			}
+
+			return null;
+		}
+
+		SenderObservations getOrCreate(java.lang.Object sender) {
+			SenderObservations entry = this.get(sender);
+
+			if (entry == null) {
+				if (this.count >= this.buckets.length() * 3 / 4) {
+					this.resize();
+				}
+
+				int hash = System.identityHashCode(sender);
+				AtomicReferenceArray<SenderObservations> buckets = this.buckets;
+				int index = hash & (buckets.length() - 1);
+
+				entry = new SenderObservations(sender, hash, buckets.get(index), this.referenceQueue);
+				buckets.set(index, entry);
+				this.count++;
+			}
+
+			return entry;
+		}
+
+		void remove(SenderObservations entry) {
+			AtomicReferenceArray<SenderObservations> buckets = this.buckets;
+			int index = entry.hash & (buckets.length() - 1);
+			SenderObservations previous = null;
+
+			for (SenderObservations current = buckets.get(index); current != null; current = current.next) {
+				if (current == entry) {
+					// Readers already past this entry keep following its next pointer
+					if (previous == null) {
+						buckets.set(index, entry.next);
+					} else {
+						previous.next = entry.next;
+					}
+
+					this.count--;
+					return;
+				}
+
+				previous = current;
+			}
+		}
+
+		List<SenderObservations> entries() {
+			List<SenderObservations> entries = new ArrayList<SenderObservations>(this.count);
+			AtomicReferenceArray<SenderObservations> buckets = this.buckets;
+
+			for (int i = 0; i < buckets.length(); i++) {
+				for (SenderObservations entry = buckets.get(i); entry != null; entry = entry.next) {
+					entries.add(entry);
+				}
+			}
+
+			return entries;
+		}
+
+		private static void moved(SenderObservations entry, SenderObservations moved) {
+			for (Observation observation : entry.observationsForAnyName) {
+				observation.senderObservations = moved;
+			}
+
+			for (Observation[] observations : entry.observationsByName.values()) {
+				for (Observation observation : observations) {
+					observation.senderObservations = moved;
+				}
+			}
+		}
+
+		private void resize() {
+			AtomicReferenceArray<SenderObservations> buckets = this.buckets;
+			AtomicReferenceArray<SenderObservations> resized = new AtomicReferenceArray<SenderObservations>(buckets.length() * 2);
+			this.count = 0;
+
+			// Entries are moved rather than relinked so readers still walking
+			// the old buckets see every chain intact, dead senders are dropped.
+			for (int i = 0; i < buckets.length(); i++) {
+				for (SenderObservations entry = buckets.get(i); entry != null; entry = entry.next) {
+					java.lang.Object sender = entry.get();
+
+					if (sender != null && !entry.isEmpty()) {
+						int index = entry.hash & (resized.length() - 1);
+						SenderObservations moved = new SenderObservations(sender, entry.hash, resized.get(index), this.referenceQueue);
+						moved.observationsForAnyName = entry.observationsForAnyName;
+						moved.observationsByName.putAll(entry.observationsByName);
+						moved(entry, moved);
+						resized.set(index, moved);
+						this.count++;
+					}
+				}
+			}
+
+			this.buckets = resized;
+		}
 	}
 
 	private static NotificationCenter defaultCenter = new NotificationCenter();
-	private Map<String, List<Observation>> observationsByName = new HashMap<String, List<Observation>>();
-	private SparseArray<List<Observation>> observationsBySender = new SparseArray<List<Observation>>();
+
+	// Observation arrays are never modified once published, adding or removing
+	// an observer swaps in a new array so posting can read them without locking.
+	// Observations without a sender are only indexed by name, those with a sender
+	// only by sender, so no observation is ever reached twice by a single post.
+	private final ConcurrentHashMap<String, Observation[]> observationsByName = new ConcurrentHashMap<String, Observation[]>();
+	private final ReferenceQueue<java.lang.Object> referenceQueue = new ReferenceQueue<java.lang.Object>();
+	private final SenderTable observationsBySender = new SenderTable(this.referenceQueue);
 
 	private Semaphore lock = new Semaphore(1);
+	private Queue asyncQueue;
 
 	/**
 	 * Get the default notification center
@@ -86,7 +352,8 @@ public class NotificationCenter extends MObject {
 	 * Post a notification
 	 * <p/>
 	 * Posts notification on the current thread and waits to return until
-	 * all observers have been notified.
+	 * all observers have been notified.  Observers added with a delivery
+	 * queue are notified on their queue instead, without waiting.
 	 *
 	 * @param notification Notification to post (a RuntimeException will be thrown if null)
 	 */
@@ -95,64 +362,67 @@ public class NotificationCenter extends MObject {
 			throw new RuntimeException("You can not post a null notification");
 		}
 
+		this.purge();
+
 		String name = notification.getName();
 		java.lang.Object sender = notification.getSender();
 
-		Set<Observation> observations = new HashSet<Observation>();
-
-		this.lock.acquireUninterruptibly();
+		Observation[] observations = this.observationsByName.get(name);
 
-		List<Observation> observationsByName = this.observationsByName.get(name);
-		if (observationsByName != null) {
-			for (Observation observation : observationsByName) {
-				if (observation.isObserving(name, sender)) {
-					observations.add(observation);
-				}
+		if (observations != null) {
+			for (Observation observation : observations) {
+				observation.deliver(notification);
 			}
 		}
 
-		int size = this.observationsBySender.size();
-		for (int i = 0; i < size; i++) {
-			for (Observation observation : this.observationsBySender.valueAt(i)) {
-				if (observation.isObserving(name, sender)) {
-					observations.add(observation);
-				}
-			}
-		}
+		if (sender != null) {
+			SenderObservations senderObservations = this.observationsBySender.get(sender);
 
-		this.lock.release();
-
-		for (Observation observation : observations) {
-			if (observation.observer != null) {
-				Observer observer = observation.observer.get();
-
-				if (observer != null) {
-					observer.observe(notification);
-				} else {
-					MWarn("Trying to send notification %s to a GC'd observer.", name);
+			if (senderObservations != null) {
+				for (Observation observation : senderObservations.observationsForAnyName) {
+					observation.deliver(notification);
 				}
-			} else if (observation.target != null) {
-				java.lang.Object target = observation.target.get();
 
-				if (target != null) {
-					try {
-						if (observation.methodTakesNotificationParameter) {
-							observation.method.invoke(target, notification);
-						} else {
-							observation.method.invoke(target);
-						}
-					} catch (IllegalAccessException e) {
-						MWarn(e, "Could not post notification %s to %s#%s", name, target, observation.method);
-					} catch (InvocationTargetException e) {
-						throw new RuntimeException(String.format("Exception posting notification %s to %s#%s", name, target, observation.method), e);
+				observations = senderObservations.observationsByName.get(name);
+
+				if (observations != null) {
+					for (Observation observation : observations) {
+						observation.deliver(notification);
 					}
-				} else {
-					MWarn("Trying to send notification %s to a GC'd observer.", name);
 				}
 			}
 		}
 	}
 
+	/**
+	 * Post a notification asynchronously
+	 * <p/>
+	 * Returns as soon as the notification has been enqueued.  Observers without
+	 * a delivery queue are notified on a background queue, one asynchronous
+	 * notification at a time in the order they were posted.
+	 *
+	 * @param notification Notification to post (a RuntimeException will be thrown if null)
+	 */
+	public void postAsync(final Notification notification) {
+		if (notification == null) {
+			throw new RuntimeException("You can not post a null notification");
+		}
+
+		this.getAsyncQueue().post(new Runnable() {
+			public void run() {
+				post(notification);
+			}
+		});
+	}
+
+	private synchronized Queue getAsyncQueue() {
+		if (this.asyncQueue == null) {
+			this.asyncQueue = new SerialQueue("mocha.foundation.notification.async");
+		}
+
+		return this.asyncQueue;
+	}
+
 	/**
 	 * Add an observer for a notification name and/or sender.
 	 * <p/>
@@ -164,6 +434,9 @@ public class NotificationCenter extends MObject {
 	 * posted by notificationSender</li>
 	 * <li>If notificationSender is null, the observer will receive all notifications
 	 * posted with notificationName as it's name.</li>
+	 * <li>If both are set, the observer will only receive notifications posted with
+	 * notificationName by notificationSender.  Notifications posted with that name
+	 * and a null sender are not delivered to it.</li>
 	 * </ul>
 	 * <p/>
 	 * {@important You can not add an anonymous class directly as an observer.  Observers are stored
@@ -184,44 +457,30 @@ public class NotificationCenter extends MObject {
 	 * NotificationCenter.defaultCenter().addObserver(this.myObserver, "name", null);</pre>
 	 */
 	public void addObserver(Observer observer, String notificationName, java.lang.Object notificationSender) {
+		this.addObserver(null, observer, notificationName, notificationSender);
+	}
+
+	/**
+	 * Add an observer for a notification name and/or sender, delivered on a queue.
+	 * <p/>
+	 * Notifications are posted to deliveryQueue for the observer rather than
+	 * delivered on the posting thread, so a slow observer doesn't hold up whoever
+	 * posted.  The observer receives notifications in the order they were posted,
+	 * even when deliveryQueue is concurrent.
+	 *
+	 * @param deliveryQueue      Queue to notify the observer on, or null for the posting thread
+	 * @param observer           Notification observer
+	 * @param notificationName   Notification name to observe or null
+	 * @param notificationSender Notification sender to observer or null
+	 *
+	 * @see NotificationCenter#addObserver(mocha.foundation.NotificationCenter.Observer, String, java.lang.Object)
+	 */
+	public void addObserver(Queue deliveryQueue, Observer observer, String notificationName, java.lang.Object notificationSender) {
 		if (notificationName == null && notificationSender == null) {
 			throw new RuntimeException("You must observe at least a notification name or a notification sender.");
 		}
 
-		Observation observation = new Observation();
-		observation.observer = new WeakReference<Observer>(observer);
-		observation.name = notificationName;
-
-		if (notificationSender != null) {
-			observation.sender = new WeakReference<java.lang.Object>(notificationSender);
-		}
-
-		this.lock.acquireUninterruptibly();
-
-		if (notificationName != null) {
-			List<Observation> observations = this.observationsByName.get(notificationName);
-
-			if (observations == null) {
-				observations = new ArrayList<Observation>();
-				this.observationsByName.put(notificationName, observations);
-			}
-
-			observations.add(observation);
-		}
-
-		if (notificationSender != null) {
-			Integer sender = notificationSender.hashCode();
-			List<Observation> observations = this.observationsBySender.get(sender);
-
-			if (observations == null) {
-				observations = new ArrayList<Observation>();
-				this.observationsBySender.put(sender, observations);
-			}
-
-			observations.add(observation);
-		}
-
-		this.lock.release();
+		this.addObservation(new Observation(observer, notificationName, notificationSender, deliveryQueue, this.referenceQueue));
 	}
 
 	/**
@@ -234,8 +493,23 @@ public class NotificationCenter extends MObject {
 	 *
 	 * @see NotificationCenter#addObserver(mocha.foundation.NotificationCenter.Observer, String, java.lang.Object)
 	 */
-	@SuppressWarnings("unchecked")
 	public void addObserver(java.lang.Object target, Method action, String notificationName, java.lang.Object notificationSender) {
+		this.addObserver(null, target, action, notificationName, notificationSender);
+	}
+
+	/**
+	 * Add a target/action observer for a notification name and/or sender, delivered on a queue.
+	 *
+	 * @param deliveryQueue      Queue to send the action on, or null for the posting thread
+	 * @param target             Notification observer target to send action to
+	 * @param action             Action to send to target, should accept a single Notification parameter or none
+	 * @param notificationName   Notification name to observe or null
+	 * @param notificationSender Notification sender to observer or null
+	 *
+	 * @see NotificationCenter#addObserver(mocha.foundation.concurrent.Queue, mocha.foundation.NotificationCenter.Observer, String, java.lang.Object)
+	 */
+	@SuppressWarnings("unchecked")
+	public void addObserver(Queue deliveryQueue, java.lang.Object target, Method action, String notificationName, java.lang.Object notificationSender) {
 		if (notificationName == null && notificationSender == null) {
 			throw new RuntimeException("You must observe at least a notification name or a notification sender.");
 		}
@@ -258,42 +532,117 @@ public class NotificationCenter extends MObject {
 			throw new RuntimeException("Notification target action can only accept a single Notification parameter or no parameters at all.");
 		}
 
-		Observation observation = new Observation();
-		observation.target = new WeakReference<java.lang.Object>(target);
-		observation.method = action;
-		observation.methodTakesNotificationParameter = methodTakesNotificationParameter;
-		observation.name = notificationName;
+		this.addObservation(new Observation(target, action, methodTakesNotificationParameter, notificationName, notificationSender, deliveryQueue, this.referenceQueue));
+	}
+
+	private void addObservation(Observation observation) {
+		this.purge();
+		this.lock.acquireUninterruptibly();
+
+		if (observation.sender == null) {
+			add(this.observationsByName, observation);
+		} else {
+			SenderObservations senderObservations = this.observationsBySender.getOrCreate(observation.sender.get());
+			observation.senderObservations = senderObservations;
+
+			if (observation.name == null) {
+				senderObservations.observationsForAnyName = added(senderObservations.observationsForAnyName, observation);
+			} else {
+				add(senderObservations.observationsByName, observation);
+			}
+		}
+
+		this.lock.release();
+	}
+
+	/**
+	 * Remove observations whose observer or sender has been GC'd, as reported
+	 * by the reference queue.  Cheap enough to call on every post when there's
+	 * nothing to purge, and bounded so a single post never does much of it.
+	 */
+	private void purge() {
+		Reference<?> reference = this.referenceQueue.poll();
 
-		if (notificationSender != null) {
-			observation.sender = new WeakReference<java.lang.Object>(notificationSender);
+		if (reference == null) {
+			return;
 		}
 
 		this.lock.acquireUninterruptibly();
 
-		if (notificationName != null) {
-			List<Observation> observations = this.observationsByName.get(notificationName);
+		for (int purged = 0; reference != null; reference = ++purged < PURGE_LIMIT ? this.referenceQueue.poll() : null) {
+			if (reference instanceof SenderObservations) {
+				this.observationsBySender.remove((SenderObservations) reference);
+			} else {
+				Observation observation = ((ObserverReference<?>) reference).observation;
+				SenderObservations senderObservations = observation.senderObservations;
+
+				if (observation.sender == null) {
+					remove(this.observationsByName, observation);
+				} else if (senderObservations != null) {
+					if (observation.name == null) {
+						senderObservations.observationsForAnyName = without(senderObservations.observationsForAnyName, observation);
+					} else {
+						remove(senderObservations.observationsByName, observation);
+					}
 
-			if (observations == null) {
-				observations = new ArrayList<Observation>();
-				this.observationsByName.put(notificationName, observations);
+					if (senderObservations.isEmpty()) {
+						this.observationsBySender.remove(senderObservations);
+					}
+				}
 			}
-
-			observations.add(observation);
 		}
 
-		if (notificationSender != null) {
-			Integer sender = notificationSender.hashCode();
-			List<Observation> observations = this.observationsBySender.get(sender);
+		this.lock.release();
+	}
 
-			if (observations == null) {
-				observations = new ArrayList<Observation>();
-				this.observationsBySender.put(sender, observations);
+	private static void remove(Map<String, Observation[]> observationsByName, Observation observation) {
+		Observation[] observations = observationsByName.get(observation.name);
+
+		if (observations != null) {
+			replace(observationsByName, observation.name, observations, without(observations, observation));
+		}
+	}
+
+	/**
+	 * Copy observations without a single observation, returning
+	 * observations itself if it isn't there.
+	 */
+	private static Observation[] without(Observation[] observations, Observation observation) {
+		for (int i = 0; i < observations.length; i++) {
+			if (observations[i] == observation) {
+				Observation[] remaining = new Observation[observations.length - 1];
+				System.arraycopy(observations, 0, remaining, 0, i);
+				System.arraycopy(observations, i + 1, remaining, i, remaining.length - i);
+				return remaining;
 			}
+		}
+
+		return observations;
+	}
 
-			observations.add(observation);
+	private static void add(Map<String, Observation[]> observationsByName, Observation observation) {
+		Observation[] observations = observationsByName.get(observation.name);
+		Observation[] added = added(observations == null ? EMPTY : observations, observation);
+
+		if (added != observations) {
+			observationsByName.put(observation.name, added);
 		}
+	}
 
-		this.lock.release();
+	/**
+	 * Copy observations with another appended, unless an equivalent
+	 * observation is already there, in which case observations is returned.
+	 */
+	private static Observation[] added(Observation[] observations, Observation observation) {
+		for (Observation existing : observations) {
+			if (existing.isEquivalent(observation)) {
+				return observations;
+			}
+		}
+
+		Observation[] added = Arrays.copyOf(observations, observations.length + 1);
+		added[observations.length] = observation;
+		return added;
 	}
 
 	/**
@@ -317,6 +666,21 @@ public class NotificationCenter extends MObject {
 	 * @see NotificationCenter#addObserver(java.lang.Object, java.lang.reflect.Method, String, java.lang.Object)
 	 */
 	public void addObserver(java.lang.Object target, String actionMethodName, String notificationName, java.lang.Object notificationSender) {
+		this.addObserver(null, target, actionMethodName, notificationName, notificationSender);
+	}
+
+	/**
+	 * Add a target/action observer for a notification name and/or sender, delivered on a queue.
+	 *
+	 * @param deliveryQueue      Queue to send the action on, or null for the posting thread
+	 * @param target             Notification observer target to send action to
+	 * @param actionMethodName   Name of the action method to send to target, should accept a single Notification parameter or none.
+	 * @param notificationName   Notification name to observe or null
+	 * @param notificationSender Notification sender to observer or null
+	 *
+	 * @see NotificationCenter#addObserver(java.lang.Object, String, String, java.lang.Object)
+	 */
+	public void addObserver(Queue deliveryQueue, java.lang.Object target, String actionMethodName, String notificationName, java.lang.Object notificationSender) {
 		Method method;
 
 		try {
@@ -329,7 +693,7 @@ public class NotificationCenter extends MObject {
 			}
 		}
 
-		this.addObserver(target, method, notificationName, notificationSender);
+		this.addObserver(deliveryQueue, target, method, notificationName, notificationSender);
 	}
 
 	/**
@@ -359,81 +723,85 @@ public class NotificationCenter extends MObject {
 
 		this.lock.acquireUninterruptibly();
 
-		if (notificationName != null) {
-			List<Observation> observations = this.observationsByName.get(notificationName);
-
-			if (observations != null) {
-				this.removeObserver(observations, observer, notificationName, notificationSender);
+		if (notificationSender == null) {
+			remove(this.observationsByName, observer, notificationName, null);
 
-				if (observations.size() == 0) {
-					this.observationsByName.remove(notificationName);
-				}
+			for (SenderObservations senderObservations : this.observationsBySender.entries()) {
+				this.remove(senderObservations, observer, notificationName);
 			}
 		} else {
-			Iterator<Map.Entry<String, List<Observation>>> iterator = this.observationsByName.entrySet().iterator();
+			// Observations without a sender cover this sender too
+			remove(this.observationsByName, observer, notificationName, notificationSender);
 
-			while (iterator.hasNext()) {
-				Map.Entry<String, List<Observation>> entry = iterator.next();
-				List<Observation> observations = entry.getValue();
-				this.removeObserver(observations, observer, null, notificationSender);
+			SenderObservations senderObservations = this.observationsBySender.get(notificationSender);
 
-				if (observations.size() == 0) {
-					iterator.remove();
-				}
+			if (senderObservations != null) {
+				this.remove(senderObservations, observer, notificationName);
 			}
 		}
 
-		if (notificationSender != null) {
-			Integer sender = notificationSender.hashCode();
-			List<Observation> observations = this.observationsBySender.get(sender);
+		this.lock.release();
+	}
 
-			if (observations != null) {
-				this.removeObserver(observations, observer, notificationName, notificationSender);
+	private void remove(SenderObservations senderObservations, java.lang.Object observer, String name) {
+		if (name == null) {
+			senderObservations.observationsForAnyName = removed(senderObservations.observationsForAnyName, observer, null, null);
+		}
 
-				if (observations.size() == 0) {
-					this.observationsBySender.remove(sender);
-				}
-			}
-		} else {
-			int size = this.observationsBySender.size();
-			int[] keys = null;
-			int numberOfKeysToRemove = 0;
+		remove(senderObservations.observationsByName, observer, name, null);
 
-			for (int i = 0; i < size; i++) {
-				List<Observation> observations = this.observationsBySender.valueAt(i);
-				this.removeObserver(observations, observer, notificationName, null);
+		if (senderObservations.isEmpty() || senderObservations.get() == null) {
+			this.observationsBySender.remove(senderObservations);
+		}
+	}
 
-				if (observations.size() == 0) {
-					if (numberOfKeysToRemove == 0) {
-						keys = new int[size];
-					}
+	private static void remove(Map<String, Observation[]> observationsByName, java.lang.Object observer, String name, java.lang.Object sender) {
+		if (name != null) {
+			Observation[] observations = observationsByName.get(name);
 
-					keys[numberOfKeysToRemove] = this.observationsBySender.keyAt(i);
-					numberOfKeysToRemove++;
-				}
+			if (observations != null) {
+				replace(observationsByName, name, observations, removed(observations, observer, name, sender));
 			}
-
-			if (numberOfKeysToRemove > 0) {
-				for (int i = 0; i < numberOfKeysToRemove; i++) {
-					this.observationsBySender.remove(keys[i]);
-				}
+		} else {
+			for (Map.Entry<String, Observation[]> entry : observationsByName.entrySet()) {
+				Observation[] observations = entry.getValue();
+				replace(observationsByName, entry.getKey(), observations, removed(observations, observer, null, sender));
 			}
 		}
-
-		this.lock.release();
 	}
 
-	private void removeObserver(List<Observation> observations, java.lang.Object observer, String name, java.lang.Object sender) {
-		Iterator<Observation> iterator = observations.iterator();
+	private static void replace(Map<String, Observation[]> observationsByName, String name, Observation[] observations, Observation[] remaining) {
+		if (remaining.length == 0) {
+			observationsByName.remove(name);
+		} else if (remaining != observations) {
+			observationsByName.put(name, remaining);
+		}
+	}
 
-		while (iterator.hasNext()) {
-			Observation observation = iterator.next();
-			Observer observer1 = observation.observer == null ? null : observation.observer.get();
-			java.lang.Object target = observation.target == null ? null : observation.target.get();
-			if ((observer1 == null && target == null) || ((observer1 == observer || target == observer) && observation.isObserving(name, sender))) {
-				iterator.remove();
+	/**
+	 * Copy observations without the ones matching observer, name and sender,
+	 * along with any whose observer has been GC'd.  Returns observations
+	 * itself if nothing was removed.
+	 */
+	private static Observation[] removed(Observation[] observations, java.lang.Object observer, String name, java.lang.Object sender) {
+		Observation[] remaining = null;
+		int count = 0;
+
+		for (int i = 0; i < observations.length; i++) {
+			Observation observation = observations[i];
+			java.lang.Object observer1 = observation.getObserver();
+			boolean remove = observer1 == null || (observer1 == observer && observation.isObserving(name, sender));
+
+			if (remove && remaining == null) {
+				remaining = new Observation[observations.length - 1];
+				System.arraycopy(observations, 0, remaining, 0, i);
+				count = i;
+			} else if (!remove && remaining != null) {
+				remaining[count++] = observation;
 			}
 		}
+
+		return remaining == null ? observations : Arrays.copyOf(remaining, count);
 	}
 
 }
@@ -0,0 +1,233 @@
+package mocha.foundation;
+
+import mocha.foundation.concurrent.IdleQueue;
+import mocha.foundation.concurrent.MainQueue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Buffers notifications before posting them to a notification center,
+ * optionally coalescing duplicates.
+ * <p/>
+ * Notifications enqueued with {@link PostingStyle#POST_ASAP} are posted
+ * on the next turn of the main looper, those enqueued with
+ * {@link PostingStyle#POST_WHEN_IDLE} once the main looper is idle.
+ * Either way they're posted on the main thread.
+ */
+public class NotificationQueue extends MObject {
+
+	public enum PostingStyle {
+		/**
+		 * Post right away, after removing matching notifications still waiting to be posted
+		 */
+		POST_NOW,
+
+		/**
+		 * Post on the next turn of the main looper
+		 */
+		POST_ASAP,
+
+		/**
+		 * Post once the main looper is idle
+		 */
+		POST_WHEN_IDLE
+	}
+
+	/**
+	 * Don't coalesce the notification
+	 */
+	public static final int COALESCE_NONE = 0;
+
+	/**
+	 * Coalesce notifications with the same name
+	 */
+	public static final int COALESCE_ON_NAME = 1;
+
+	/**
+	 * Coalesce notifications with the same sender
+	 */
+	public static final int COALESCE_ON_SENDER = 1 << 1;
+
+	private static NotificationQueue defaultQueue;
+
+	private final NotificationCenter notificationCenter;
+	private final List<Notification> asapNotifications = new ArrayList<Notification>();
+	private final List<Notification> idleNotifications = new ArrayList<Notification>();
+	private boolean asapScheduled;
+	private boolean idleScheduled;
+
+	private final Runnable postAsap = new Runnable() {
+		public void run() {
+			post(asapNotifications);
+		}
+	};
+
+	private final Runnable postWhenIdle = new Runnable() {
+		public void run() {
+			post(idleNotifications);
+		}
+	};
+
+	/**
+	 * Get the default notification queue, which posts to the default notification center
+	 *
+	 * @return notification queue
+	 */
+	public static synchronized NotificationQueue defaultQueue() {
+		if (defaultQueue == null) {
+			defaultQueue = new NotificationQueue(NotificationCenter.defaultCenter());
+		}
+
+		return defaultQueue;
+	}
+
+	/**
+	 * Create a new notification queue
+	 *
+	 * @param notificationCenter Notification center to post to (a RuntimeException will be thrown if null)
+	 */
+	public NotificationQueue(NotificationCenter notificationCenter) {
+		if (notificationCenter == null) {
+			throw new RuntimeException("A notification queue requires a notification center.");
+		}
+
+		this.notificationCenter = notificationCenter;
+	}
+
+	/**
+	 * Enqueue a notification, coalescing it with notifications
+	 * that have the same name and sender.
+	 *
+	 * @param notification Notification to enqueue (a RuntimeException will be thrown if null)
+	 * @param postingStyle When to post the notification
+	 *
+	 * @see #enqueue(Notification, mocha.foundation.NotificationQueue.PostingStyle, int)
+	 */
+	public void enqueue(Notification notification, PostingStyle postingStyle) {
+		this.enqueue(notification, postingStyle, COALESCE_ON_NAME | COALESCE_ON_SENDER);
+	}
+
+	/**
+	 * Enqueue a notification
+	 * <p/>
+	 * If a notification matching the coalesce mask is already waiting to be
+	 * posted, this one is dropped in favor of it.  A notification posted asap
+	 * replaces matching ones still waiting for idle instead, so it isn't held
+	 * back until then.  When posting now, matching notifications waiting to be
+	 * posted are removed.
+	 *
+	 * @param notification Notification to enqueue (a RuntimeException will be thrown if null)
+	 * @param postingStyle When to post the notification
+	 * @param coalesceMask {@link #COALESCE_NONE}, or {@link #COALESCE_ON_NAME} and/or {@link #COALESCE_ON_SENDER}
+	 */
+	public void enqueue(Notification notification, PostingStyle postingStyle, int coalesceMask) {
+		if (notification == null) {
+			throw new RuntimeException("You can not enqueue a null notification");
+		}
+
+		if (postingStyle == PostingStyle.POST_NOW) {
+			this.dequeueNotificationsMatching(notification, coalesceMask);
+			this.notificationCenter.post(notification);
+			return;
+		}
+
+		boolean schedule;
+
+		synchronized (this) {
+			if (coalesceMask != COALESCE_NONE && contains(this.asapNotifications, notification, coalesceMask)) {
+				return;
+			}
+
+			if (postingStyle == PostingStyle.POST_ASAP) {
+				// A matching notification waiting for idle would otherwise hold this one back until then
+				if (coalesceMask != COALESCE_NONE) {
+					remove(this.idleNotifications, notification, coalesceMask);
+				}
+
+				this.asapNotifications.add(notification);
+				schedule = !this.asapScheduled;
+				this.asapScheduled = true;
+			} else {
+				if (coalesceMask != COALESCE_NONE && contains(this.idleNotifications, notification, coalesceMask)) {
+					return;
+				}
+
+				this.idleNotifications.add(notification);
+				schedule = !this.idleScheduled;
+				this.idleScheduled = true;
+			}
+		}
+
+		if (schedule) {
+			if (postingStyle == PostingStyle.POST_ASAP) {
+				MainQueue.get().post(this.postAsap);
+			} else {
+				IdleQueue.get().post(this.postWhenIdle);
+			}
+		}
+	}
+
+	/**
+	 * Remove notifications waiting to be posted that match a notification
+	 *
+	 * @param notification Notification to match
+	 * @param coalesceMask {@link #COALESCE_ON_NAME} and/or {@link #COALESCE_ON_SENDER}, with
+	 *                     {@link #COALESCE_NONE} only the notification itself is removed
+	 */
+	public synchronized void dequeueNotificationsMatching(Notification notification, int coalesceMask) {
+		remove(this.asapNotifications, notification, coalesceMask);
+		remove(this.idleNotifications, notification, coalesceMask);
+	}
+
+	private void post(List<Notification> notifications) {
+		Notification[] posting;
+
+		synchronized (this) {
+			posting = notifications.toArray(new Notification[notifications.size()]);
+			notifications.clear();
+
+			if (notifications == this.asapNotifications) {
+				this.asapScheduled = false;
+			} else {
+				this.idleScheduled = false;
+			}
+		}
+
+		for (Notification notification : posting) {
+			this.notificationCenter.post(notification);
+		}
+	}
+
+	private static boolean contains(List<Notification> notifications, Notification notification, int coalesceMask) {
+		for (Notification queued : notifications) {
+			if (matches(queued, notification, coalesceMask)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static void remove(List<Notification> notifications, Notification notification, int coalesceMask) {
+		Iterator<Notification> iterator = notifications.iterator();
+
+		while (iterator.hasNext()) {
+			if (matches(iterator.next(), notification, coalesceMask)) {
+				iterator.remove();
+			}
+		}
+	}
+
+	private static boolean matches(Notification queued, Notification notification, int coalesceMask) {
+		if (coalesceMask == COALESCE_NONE) {
+			return queued == notification;
+		}
+
+		boolean nameMatch = (coalesceMask & COALESCE_ON_NAME) == 0 || queued.getName().equals(notification.getName());
+		boolean senderMatch = (coalesceMask & COALESCE_ON_SENDER) == 0 || queued.getSender() == notification.getSender();
+		return nameMatch && senderMatch;
+	}
+
+}
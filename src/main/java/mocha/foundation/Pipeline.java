@@ -0,0 +1,415 @@
+package mocha.foundation;
+
+import mocha.foundation.concurrent.Priority;
+import mocha.foundation.concurrent.Queue;
+
+import java.util.*;
+
+/**
+ * Lazy chain of collection operations.
+ * <p/>
+ * Building a pipeline doesn't touch the source, nothing runs until one of
+ * the terminal operations (toList, toSet, count, first, forEach) is called.
+ * Consecutive filter, map, distinct and take stages are fused, so each item
+ * is pushed through all of them in a single pass without intermediate
+ * collections, and take stops reading the source once it has enough items.
+ * Sorting needs every item, so it's the only stage that collects.
+ * <p/>
+ * A pipeline marked {@link #parallel()} runs its leading filter and map
+ * stages, and its sorts, across the default concurrent queue once the input
+ * reaches {@link #PARALLEL_THRESHOLD} items.  Those blocks and comparators
+ * must then be safe to call from multiple threads.  Results keep the source
+ * order either way.
+ * <p/>
+ * Pipelines are immutable, every stage returns a new pipeline and a
+ * pipeline can be run any number of times.
+ *
+ * @param <T> item type
+ */
+public final class Pipeline<T> {
+	public static final int PARALLEL_THRESHOLD = 8192;
+	private static final int PARALLELISM = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+	private final Collection<?> source;
+	private final Pipeline<?> upstream;
+	private final Stage stage;
+	private final boolean parallel;
+
+	private Pipeline(Collection<?> source, Pipeline<?> upstream, Stage stage, boolean parallel) {
+		this.source = source;
+		this.upstream = upstream;
+		this.stage = stage;
+		this.parallel = parallel;
+	}
+
+	/**
+	 * Create a pipeline over a collection.  The collection is read when a
+	 * terminal operation runs, not when the pipeline is created.
+	 *
+	 * @param source source collection, null is treated as empty
+	 */
+	public static <T> Pipeline<T> from(Collection<? extends T> source) {
+		return new Pipeline<>(source == null ? Collections.emptyList() : source, null, null, false);
+	}
+
+	public static <T> Pipeline<T> from(T... items) {
+		return from(Arrays.asList(items));
+	}
+
+	/**
+	 * @return Pipeline that runs its filter and map stages in parallel for large inputs
+	 */
+	public Pipeline<T> parallel() {
+		return new Pipeline<>(this.source, this.upstream, this.stage, true);
+	}
+
+	public Pipeline<T> filter(final Lists.Filter<? super T> filter) {
+		return this.then(new Stage(true) {
+			@SuppressWarnings("unchecked")
+			Sink sink(final Sink downstream) {
+				return new Sink() {
+					boolean accept(Object item) {
+						return !filter.filter((T) item) || downstream.accept(item);
+					}
+				};
+			}
+		});
+	}
+
+	public <R> Pipeline<R> map(final TypedResultBlock<? super T, ? extends R> block) {
+		return this.then(new Stage(true) {
+			@SuppressWarnings("unchecked")
+			Sink sink(final Sink downstream) {
+				return new Sink() {
+					boolean accept(Object item) {
+						return downstream.accept(block.block((T) item));
+					}
+				};
+			}
+		});
+	}
+
+	/**
+	 * Drop repeated items, keeping the first occurrence of each
+	 */
+	public Pipeline<T> distinct() {
+		return this.then(new Stage(false) {
+			Sink sink(final Sink downstream) {
+				return new Sink() {
+					final Set<Object> seen = new HashSet<>();
+
+					boolean accept(Object item) {
+						return !this.seen.add(item) || downstream.accept(item);
+					}
+				};
+			}
+		});
+	}
+
+	/**
+	 * Limit the pipeline to its first count items
+	 */
+	public Pipeline<T> take(final int count) {
+		return this.then(new Stage(false) {
+			Sink sink(final Sink downstream) {
+				return new Sink() {
+					int remaining = count;
+
+					boolean accept(Object item) {
+						if (this.remaining <= 0) {
+							return false;
+						}
+
+						this.remaining--;
+						return downstream.accept(item) && this.remaining > 0;
+					}
+				};
+			}
+		});
+	}
+
+	/**
+	 * Sort with a comparator, keeping the order of equal items
+	 */
+	public Pipeline<T> sort(final Comparator<? super T> comparator) {
+		return this.then(new SortStage() {
+			@SuppressWarnings("unchecked")
+			void sort(final Object[] items, int count, boolean parallel) {
+				if (!parallel || count < PARALLEL_THRESHOLD) {
+					Arrays.sort(items, 0, count, (Comparator<Object>) comparator);
+					return;
+				}
+
+				int[] order = Sorter.sortedIndexes(count, true, new Sorter.IndexComparator() {
+					public int compare(int index1, int index2) {
+						return comparator.compare((T) items[index1], (T) items[index2]);
+					}
+				});
+
+				Object[] sorted = new Object[count];
+
+				for (int i = 0; i < count; i++) {
+					sorted[i] = items[order[i]];
+				}
+
+				System.arraycopy(sorted, 0, items, 0, count);
+			}
+		});
+	}
+
+	/**
+	 * Sort by public fields or getters on the items
+	 *
+	 * @see Lists#sort(java.util.List, SortDescriptor...)
+	 */
+	public Pipeline<T> sort(final SortDescriptor... sortDescriptors) {
+		return this.then(new SortStage() {
+			void sort(Object[] items, int count, boolean parallel) {
+				Sorter.sort(Arrays.asList(items).subList(0, count), parallel, sortDescriptors);
+			}
+		});
+	}
+
+	public List<T> toList() {
+		Collector collector = new Collector(16);
+		this.run(collector);
+		return collector.toList();
+	}
+
+	public Set<T> toSet() {
+		return new HashSet<>(this.toList());
+	}
+
+	public int count() {
+		final int[] count = new int[1];
+
+		this.run(new Sink() {
+			boolean accept(Object item) {
+				count[0]++;
+				return true;
+			}
+		});
+
+		return count[0];
+	}
+
+	/**
+	 * @return First item, or null if the pipeline is empty.
+	 * Stops reading the source as soon as an item comes through.
+	 */
+	@SuppressWarnings("unchecked")
+	public T first() {
+		final Object[] first = new Object[1];
+
+		this.run(new Sink() {
+			boolean accept(Object item) {
+				first[0] = item;
+				return false;
+			}
+		});
+
+		return (T) first[0];
+	}
+
+	public void forEach(final TypedBlock<? super T> block) {
+		this.run(new Sink() {
+			@SuppressWarnings("unchecked")
+			boolean accept(Object item) {
+				block.block((T) item);
+				return true;
+			}
+		});
+	}
+
+	private <R> Pipeline<R> then(Stage stage) {
+		return new Pipeline<>(this.source, this, stage, this.parallel);
+	}
+
+	private List<Stage> stages() {
+		List<Stage> stages = new ArrayList<>();
+
+		for (Pipeline<?> pipeline = this; pipeline.stage != null; pipeline = pipeline.upstream) {
+			stages.add(pipeline.stage);
+		}
+
+		Collections.reverse(stages);
+		return stages;
+	}
+
+	/**
+	 * Push the source through every stage into terminal.  Stages between
+	 * sorts run as one fused pass, each sort collects what reached it and
+	 * becomes the source for the stages after it.
+	 */
+	private void run(Sink terminal) {
+		List<Stage> stages = this.stages();
+		int size = stages.size();
+
+		Object[] items = this.source.toArray();
+		int count = items.length;
+		int start = 0;
+
+		while (true) {
+			int end = start;
+
+			while (end < size && !(stages.get(end) instanceof SortStage)) {
+				end++;
+			}
+
+			if (this.parallel && count >= PARALLEL_THRESHOLD) {
+				int stateless = start;
+
+				while (stateless < end && stages.get(stateless).stateless) {
+					stateless++;
+				}
+
+				if (stateless > start) {
+					Collector collector = runParallel(items, count, stages.subList(start, stateless));
+					items = collector.items;
+					count = collector.count;
+					start = stateless;
+				}
+			}
+
+			boolean last = end == size;
+
+			if (start < end || last) {
+				Collector collector = last ? null : new Collector(16);
+				Sink sink = last ? terminal : collector;
+
+				for (int i = end - 1; i >= start; i--) {
+					sink = stages.get(i).sink(sink);
+				}
+
+				for (int i = 0; i < count; i++) {
+					if (!sink.accept(items[i])) break;
+				}
+
+				if (last) {
+					return;
+				}
+
+				items = collector.items;
+				count = collector.count;
+			}
+
+			((SortStage) stages.get(end)).sort(items, count, this.parallel);
+			start = end + 1;
+		}
+	}
+
+	/**
+	 * Run stateless stages over chunks of items on the concurrent queue,
+	 * then join the chunk results back together in order.
+	 */
+	private static Collector runParallel(final Object[] items, final int count, final List<Stage> stages) {
+		final int chunks = PARALLELISM * 4;
+		final int chunkSize = (count + chunks - 1) / chunks;
+		final Collector[] results = new Collector[chunks];
+
+		Queue.concurrent(Priority.DEFAULT).apply(chunks, new IndexedBlock() {
+			public void block(int index) {
+				int from = Math.min(count, index * chunkSize);
+				int to = Math.min(count, from + chunkSize);
+
+				Collector collector = new Collector(to - from);
+				Sink sink = collector;
+
+				for (int i = stages.size() - 1; i >= 0; i--) {
+					sink = stages.get(i).sink(sink);
+				}
+
+				for (int i = from; i < to; i++) {
+					sink.accept(items[i]);
+				}
+
+				results[index] = collector;
+			}
+		});
+
+		int total = 0;
+
+		for (Collector result : results) {
+			total += result.count;
+		}
+
+		Collector joined = new Collector(total);
+
+		for (Collector result : results) {
+			System.arraycopy(result.items, 0, joined.items, joined.count, result.count);
+			joined.count += result.count;
+		}
+
+		return joined;
+	}
+
+	/**
+	 * Receives items from the stage before it
+	 */
+	private static abstract class Sink {
+		/**
+		 * @return false once no more items are wanted
+		 */
+		abstract boolean accept(Object item);
+	}
+
+	private static abstract class Stage {
+		// Stateless stages handle every item independently and can run in parallel
+		final boolean stateless;
+
+		Stage(boolean stateless) {
+			this.stateless = stateless;
+		}
+
+		/**
+		 * Create the sink for a single run of this stage, feeding downstream
+		 */
+		abstract Sink sink(Sink downstream);
+	}
+
+	private static abstract class SortStage extends Stage {
+		SortStage() {
+			super(false);
+		}
+
+		// Sorts collect their input instead, see run()
+		Sink sink(Sink downstream) {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * Sort items[0, count) in place
+		 */
+		abstract void sort(Object[] items, int count, boolean parallel);
+	}
+
+	private static final class Collector extends Sink {
+		Object[] items;
+		int count;
+
+		Collector(int capacity) {
+			this.items = new Object[Math.max(capacity, 1)];
+		}
+
+		boolean accept(Object item) {
+			if (this.count == this.items.length) {
+				this.items = Arrays.copyOf(this.items, this.count << 1);
+			}
+
+			this.items[this.count++] = item;
+			return true;
+		}
+
+		@SuppressWarnings("unchecked")
+		<T> List<T> toList() {
+			List<T> list = new ArrayList<>(this.count);
+
+			for (int i = 0; i < this.count; i++) {
+				list.add((T) this.items[i]);
+			}
+
+			return list;
+		}
+	}
+
+}
@@ -41,6 +41,12 @@ public class Sets {
 	 * @return true if at least one item in set1 is also in set 1, otherwise false.
 	 */
 	public static <T> boolean intersects(Set<T> set1, Set<T> set2) {
+		if (set1.size() > set2.size() && isHashed(set1) && isHashed(set2)) {
+			Set<T> swap = set1;
+			set1 = set2;
+			set2 = swap;
+		}
+
 		for (T t : set1) {
 			if (set2.contains(t)) {
 				return true;
@@ -52,24 +58,40 @@ public class Sets {
 
 	/**
 	 * Creates a new set with only elements that are in both set1 and set2
+	 * <p/>
+	 * Membership is checked with set2's contains, unless both sets are hash
+	 * sets, in which case the smaller one is walked and the larger one checked.
+	 * Where two elements are equal, either set's element may end up in the result.
 	 *
 	 * @param set1
 	 * @param set2
 	 * @param <T>
 	 */
 	public static <T> Set<T> intersectedSet(Set<T> set1, Set<T> set2) {
-		Set<T> intersectedSet = new HashSet<>();
-		intersectedSet.addAll(set1);
+		// Walk the smaller set and probe the larger one, when both agree on equality
+		if (set1.size() > set2.size() && isHashed(set1) && isHashed(set2)) {
+			Set<T> swap = set1;
+			set1 = set2;
+			set2 = swap;
+		}
 
-		Iterator<T> iterator = intersectedSet.iterator();
+		Set<T> intersectedSet = new HashSet<>();
 
-		while (iterator.hasNext()) {
-			if (!set2.contains(iterator.next())) {
-				iterator.remove();
+		for (T t : set1) {
+			if (set2.contains(t)) {
+				intersectedSet.add(t);
 			}
 		}
 
 		return intersectedSet;
 	}
 
+	/**
+	 * @return Whether set uses equals and hashCode for membership, so it can be
+	 * swapped with another such set without changing what's considered equal
+	 */
+	private static boolean isHashed(Set<?> set) {
+		return set instanceof HashSet;
+	}
+
 }
@@ -0,0 +1,515 @@
+package mocha.foundation;
+
+import mocha.foundation.concurrent.Priority;
+import mocha.foundation.concurrent.Queue;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sort engine behind {@link Lists#sort(java.util.List, SortDescriptor...)}.
+ * <p/>
+ * The value for each sort key is read once per item into a primitive array,
+ * then a permutation of item indexes is merge sorted against those arrays, so
+ * reflection is never touched while comparing.  Lists larger than
+ * {@link #PARALLEL_THRESHOLD} are sorted in runs spread across the default
+ * concurrent queue and merged pairwise.  The sort is stable.
+ */
+final class Sorter {
+	static final int PARALLEL_THRESHOLD = 8192;
+	private static final int INSERTION_SORT_THRESHOLD = 32;
+	private static final int PARALLELISM = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+	private static final ConcurrentHashMap<Class<?>, ConcurrentHashMap<String, Accessor>> accessors = new ConcurrentHashMap<>();
+
+	interface IndexComparator {
+		int compare(int index1, int index2);
+	}
+
+	private Sorter() {
+
+	}
+
+	static <T> void sort(List<T> list, SortDescriptor... sortDescriptors) {
+		sort(list, true, sortDescriptors);
+	}
+
+	/**
+	 * @param parallel whether large lists may be sorted across the concurrent queue
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> void sort(List<T> list, boolean parallel, SortDescriptor... sortDescriptors) {
+		for (SortDescriptor sortDescriptor : sortDescriptors) {
+			if (sortDescriptor == null || sortDescriptor.key == null || sortDescriptor.key.length() == 0) {
+				throw new IllegalArgumentException("Sort descriptors must have a non-empty key, got " + sortDescriptor + ".");
+			}
+		}
+
+		final int count = list.size();
+		if (count < 2 || sortDescriptors.length == 0) return;
+
+		final Object[] items = list.toArray();
+		Class<?> itemClass = items[0].getClass();
+
+		final Keys[] keys = new Keys[sortDescriptors.length];
+		final boolean[] descending = new boolean[sortDescriptors.length];
+
+		for (int i = 0; i < sortDescriptors.length; i++) {
+			keys[i] = getAccessor(itemClass, sortDescriptors[i].key).createKeys(count);
+			descending[i] = !sortDescriptors[i].ascending;
+		}
+
+		if (parallel && count >= PARALLEL_THRESHOLD) {
+			final int chunk = (count + PARALLELISM - 1) / PARALLELISM;
+
+			Queue.concurrent(Priority.DEFAULT).apply(PARALLELISM, new IndexedBlock() {
+				public void block(int index) {
+					int from = index * chunk;
+					int to = Math.min(count, from + chunk);
+
+					for (Keys key : keys) {
+						key.extract(items, from, to);
+					}
+				}
+			});
+		} else {
+			for (Keys key : keys) {
+				key.extract(items, 0, count);
+			}
+		}
+
+		int[] order = sortedIndexes(count, parallel, new IndexComparator() {
+			public int compare(int index1, int index2) {
+				for (int i = 0; i < keys.length; i++) {
+					int result = keys[i].compare(index1, index2);
+
+					if (result != 0) {
+						return descending[i] ? -result : result;
+					}
+				}
+
+				return 0;
+			}
+		});
+
+		ListIterator<T> iterator = list.listIterator();
+
+		for (int index : order) {
+			iterator.next();
+			iterator.set((T) items[index]);
+		}
+	}
+
+	/**
+	 * Stable sort of the indexes [0, count)
+	 *
+	 * @param count      number of indexes
+	 * @param parallel   whether to sort across the concurrent queue when count
+	 *                   reaches PARALLEL_THRESHOLD
+	 * @param comparator comparator for two indexes, must be safe to call from
+	 *                   multiple threads when sorting in parallel
+	 *
+	 * @return Indexes in sorted order
+	 */
+	static int[] sortedIndexes(final int count, boolean parallel, final IndexComparator comparator) {
+		final int[] indexes = new int[count];
+		final int[] buffer = new int[count];
+
+		for (int index = 0; index < count; index++) {
+			indexes[index] = index;
+		}
+
+		if (!parallel || count < PARALLEL_THRESHOLD) {
+			sort(indexes, buffer, 0, count, comparator);
+			return indexes;
+		}
+
+		Queue queue = Queue.concurrent(Priority.DEFAULT);
+
+		// Sort one run per thread, rounded up to a power of two so every merge pass pairs up evenly
+		final int runs = Integer.highestOneBit(PARALLELISM - 1) << 1;
+		final int runLength = (count + runs - 1) / runs;
+
+		queue.apply(runs, new IndexedBlock() {
+			public void block(int index) {
+				int from = Math.min(count, index * runLength);
+				sort(indexes, buffer, from, Math.min(count, from + runLength), comparator);
+			}
+		});
+
+		int[] source = indexes;
+		int[] destination = buffer;
+
+		for (int width = runLength; width < count; width <<= 1) {
+			final int[] from = source;
+			final int[] to = destination;
+			final int mergeWidth = width;
+
+			queue.apply((count + (width << 1) - 1) / (width << 1), new IndexedBlock() {
+				public void block(int index) {
+					int low = index * (mergeWidth << 1);
+					int middle = Math.min(count, low + mergeWidth);
+					merge(from, to, low, middle, Math.min(count, middle + mergeWidth), comparator);
+				}
+			});
+
+			source = to;
+			destination = from;
+		}
+
+		return source;
+	}
+
+	/**
+	 * Sort indexes[from, to), using the same range of buffer as scratch space
+	 */
+	private static void sort(int[] indexes, int[] buffer, int from, int to, IndexComparator comparator) {
+		for (int low = from; low < to; low += INSERTION_SORT_THRESHOLD) {
+			insertionSort(indexes, low, Math.min(to, low + INSERTION_SORT_THRESHOLD), comparator);
+		}
+
+		int[] source = indexes;
+		int[] destination = buffer;
+
+		for (int width = INSERTION_SORT_THRESHOLD; width < to - from; width <<= 1) {
+			for (int low = from; low < to; low += width << 1) {
+				int middle = Math.min(to, low + width);
+				merge(source, destination, low, middle, Math.min(to, middle + width), comparator);
+			}
+
+			int[] swap = source;
+			source = destination;
+			destination = swap;
+		}
+
+		if (source != indexes) {
+			System.arraycopy(source, from, indexes, from, to - from);
+		}
+	}
+
+	private static void insertionSort(int[] indexes, int from, int to, IndexComparator comparator) {
+		for (int i = from + 1; i < to; i++) {
+			int index = indexes[i];
+			int j = i - 1;
+
+			while (j >= from && comparator.compare(indexes[j], index) > 0) {
+				indexes[j + 1] = indexes[j];
+				j--;
+			}
+
+			indexes[j + 1] = index;
+		}
+	}
+
+	/**
+	 * Merge the sorted ranges source[low, middle) and source[middle, high) into destination[low, high)
+	 */
+	private static void merge(int[] source, int[] destination, int low, int middle, int high, IndexComparator comparator) {
+		if (middle >= high || comparator.compare(source[middle - 1], source[middle]) <= 0) {
+			System.arraycopy(source, low, destination, low, high - low);
+			return;
+		}
+
+		int left = low;
+		int right = middle;
+
+		for (int i = low; i < high; i++) {
+			if (right >= high || (left < middle && comparator.compare(source[left], source[right]) <= 0)) {
+				destination[i] = source[left++];
+			} else {
+				destination[i] = source[right++];
+			}
+		}
+	}
+
+	private static Accessor getAccessor(Class<?> itemClass, String key) {
+		ConcurrentHashMap<String, Accessor> classAccessors = accessors.get(itemClass);
+
+		if (classAccessors == null) {
+			classAccessors = new ConcurrentHashMap<>();
+			ConcurrentHashMap<String, Accessor> existing = accessors.putIfAbsent(itemClass, classAccessors);
+
+			if (existing != null) {
+				classAccessors = existing;
+			}
+		}
+
+		Accessor accessor = classAccessors.get(key);
+
+		if (accessor == null) {
+			accessor = new Accessor(itemClass, key);
+			classAccessors.put(key, accessor);
+		}
+
+		return accessor;
+	}
+
+	/**
+	 * Public field or getter for a key on a class, resolved once and reused
+	 * for every sort on that class.  It works for any instance of the class
+	 * that declares the field or getter, items of other classes in the same
+	 * list get the accessor for their own class.
+	 */
+	private static final class Accessor {
+		private static final int TYPE_INT = 0;
+		private static final int TYPE_LONG = 1;
+		private static final int TYPE_FLOAT = 2;
+		private static final int TYPE_DOUBLE = 3;
+		private static final int TYPE_BOOLEAN = 4;
+		private static final int TYPE_STRING = 5;
+
+		private final String key;
+		private final Class<?> declaringClass;
+		private final Field field;
+		private final Method method;
+		private final int type;
+		private final boolean primitive;
+
+		Accessor(Class<?> itemClass, String key) {
+			Field field = null;
+			Method method = null;
+			Class<?> type;
+
+			try {
+				field = itemClass.getField(key);
+				type = field.getType();
+			} catch (NoSuchFieldException e) {
+				String getter = "get" + key.substring(0, 1).toUpperCase() + key.substring(1);
+
+				try {
+					method = itemClass.getMethod(getter);
+					type = method.getReturnType();
+				} catch (NoSuchMethodException e1) {
+					throw new RuntimeException(e);
+				}
+			}
+
+			if (type.equals(Integer.class) || type.equals(int.class)) {
+				this.type = TYPE_INT;
+			} else if (type.equals(Long.class) || type.equals(long.class)) {
+				this.type = TYPE_LONG;
+			} else if (type.equals(Float.class) || type.equals(float.class)) {
+				this.type = TYPE_FLOAT;
+			} else if (type.equals(Double.class) || type.equals(double.class)) {
+				this.type = TYPE_DOUBLE;
+			} else if (type.equals(Boolean.class) || type.equals(boolean.class)) {
+				this.type = TYPE_BOOLEAN;
+			} else if (type.equals(String.class)) {
+				this.type = TYPE_STRING;
+			} else {
+				throw new RuntimeException("Type '" + type + "' is not supported.");
+			}
+
+			// Public members of a non-public class still go through access checks on every call
+			if (!Modifier.isPublic(itemClass.getModifiers())) {
+				try {
+					if (field != null) {
+						field.setAccessible(true);
+					} else {
+						method.setAccessible(true);
+					}
+				} catch (SecurityException ignored) {
+
+				}
+			}
+
+			this.key = key;
+			this.declaringClass = field != null ? field.getDeclaringClass() : method.getDeclaringClass();
+			this.field = field;
+			this.method = method;
+			this.primitive = type.isPrimitive();
+		}
+
+		/**
+		 * @return Type of array the values are extracted into, TYPE_LONG, TYPE_DOUBLE or TYPE_STRING
+		 */
+		int getKeyType() {
+			switch (this.type) {
+				case TYPE_FLOAT:
+				case TYPE_DOUBLE:
+					return TYPE_DOUBLE;
+				case TYPE_STRING:
+					return TYPE_STRING;
+				default:
+					return TYPE_LONG;
+			}
+		}
+
+		Keys createKeys(int count) {
+			switch (this.type) {
+				case TYPE_FLOAT:
+				case TYPE_DOUBLE:
+					return new DoubleKeys(this, count);
+				case TYPE_STRING:
+					return new StringKeys(this, count);
+				default:
+					return new LongKeys(this, count);
+			}
+		}
+
+		long getLong(Object item) {
+			try {
+				if (this.primitive && this.field != null) {
+					switch (this.type) {
+						case TYPE_INT:
+							return this.field.getInt(item);
+						case TYPE_LONG:
+							return this.field.getLong(item);
+						default:
+							return this.field.getBoolean(item) ? 1 : 0;
+					}
+				}
+
+				Object value = this.get(item);
+
+				if (value == null) {
+					return 0;
+				} else if (value instanceof Boolean) {
+					return (Boolean) value ? 1 : 0;
+				} else {
+					return ((Number) value).longValue();
+				}
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		double getDouble(Object item) {
+			try {
+				if (this.primitive && this.field != null) {
+					return this.type == TYPE_FLOAT ? this.field.getFloat(item) : this.field.getDouble(item);
+				}
+
+				Object value = this.get(item);
+				return value == null ? 0.0 : ((Number) value).doubleValue();
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		String getString(Object item) {
+			Object value = this.get(item);
+			return value == null ? "" : (String) value;
+		}
+
+		private Object get(Object item) {
+			try {
+				if (this.method != null) {
+					return this.method.invoke(item);
+				} else {
+					return this.field.get(item);
+				}
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	/**
+	 * Extracted values for one sort key, indexed by item position
+	 */
+	private static abstract class Keys {
+		final Accessor accessor;
+
+		Keys(Accessor accessor) {
+			this.accessor = accessor;
+		}
+
+		abstract void extract(Object[] items, int from, int to);
+
+		/**
+		 * Accessor to read an item that isn't an instance of the class
+		 * declaring the key accessor was resolved from
+		 */
+		Accessor getAccessor(Object item, Accessor accessor) {
+			if (accessor.declaringClass.isInstance(item)) {
+				return accessor;
+			}
+
+			accessor = Sorter.getAccessor(item.getClass(), this.accessor.key);
+
+			if (accessor.getKeyType() != this.accessor.getKeyType()) {
+				throw new RuntimeException("Key '" + accessor.key + "' on " + accessor.declaringClass + " can't be sorted together with the one on " + this.accessor.declaringClass + ".");
+			}
+
+			return accessor;
+		}
+
+		abstract int compare(int index1, int index2);
+	}
+
+	// int, long and boolean keys
+	private static final class LongKeys extends Keys {
+		private final long[] values;
+
+		LongKeys(Accessor accessor, int count) {
+			super(accessor);
+			this.values = new long[count];
+		}
+
+		void extract(Object[] items, int from, int to) {
+			Accessor accessor = this.accessor;
+
+			for (int i = from; i < to; i++) {
+				accessor = this.getAccessor(items[i], accessor);
+				this.values[i] = accessor.getLong(items[i]);
+			}
+		}
+
+		int compare(int index1, int index2) {
+			long value1 = this.values[index1];
+			long value2 = this.values[index2];
+			return value1 < value2 ? -1 : (value1 == value2 ? 0 : 1);
+		}
+	}
+
+	// float and double keys, floats widen to double without changing their order
+	private static final class DoubleKeys extends Keys {
+		private final double[] values;
+
+		DoubleKeys(Accessor accessor, int count) {
+			super(accessor);
+			this.values = new double[count];
+		}
+
+		void extract(Object[] items, int from, int to) {
+			Accessor accessor = this.accessor;
+
+			for (int i = from; i < to; i++) {
+				accessor = this.getAccessor(items[i], accessor);
+				this.values[i] = accessor.getDouble(items[i]);
+			}
+		}
+
+		int compare(int index1, int index2) {
+			return Double.compare(this.values[index1], this.values[index2]);
+		}
+	}
+
+	private static final class StringKeys extends Keys {
+		private final String[] values;
+
+		StringKeys(Accessor accessor, int count) {
+			super(accessor);
+			this.values = new String[count];
+		}
+
+		void extract(Object[] items, int from, int to) {
+			Accessor accessor = this.accessor;
+
+			for (int i = from; i < to; i++) {
+				accessor = this.getAccessor(items[i], accessor);
+				this.values[i] = accessor.getString(items[i]);
+			}
+		}
+
+		int compare(int index1, int index2) {
+			return this.values[index1].compareTo(this.values[index2]);
+		}
+	}
+
+}
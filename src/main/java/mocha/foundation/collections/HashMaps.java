@@ -0,0 +1,38 @@
+package mocha.foundation.collections;
+
+/**
+ * Hashing helpers shared by the primitive hash maps
+ */
+final class HashMaps {
+	private static final int MAXIMUM_TABLE_SIZE = 1 << 30;
+
+	private HashMaps() {
+
+	}
+
+	/**
+	 * Spread the bits of a key so sequential keys don't cluster in the table
+	 */
+	static int hash(int key) {
+		int hash = key * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	static int hash(long key) {
+		return hash((int) (key ^ (key >>> 32)));
+	}
+
+	/**
+	 * @return Power of two table size that holds capacity entries below the load factor
+	 */
+	static int tableSize(int capacity, float loadFactor) {
+		long needed = (long) Math.ceil(Math.max(capacity, 2) / loadFactor);
+
+		if (needed >= MAXIMUM_TABLE_SIZE) {
+			return MAXIMUM_TABLE_SIZE;
+		}
+
+		return Integer.highestOneBit((int) needed - 1) << 1;
+	}
+
+}
@@ -0,0 +1,177 @@
+package mocha.foundation.collections;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of ints, without boxing.
+ */
+public class IntArrayList {
+	private static final int DEFAULT_CAPACITY = 8;
+	private static final int[] EMPTY = new int[0];
+
+	private int[] values;
+	private int size;
+
+	public IntArrayList() {
+		this.values = EMPTY;
+	}
+
+	public IntArrayList(int capacity) {
+		this.values = capacity > 0 ? new int[capacity] : EMPTY;
+	}
+
+	/**
+	 * Create a list containing values
+	 *
+	 * @param values values to copy into the list
+	 *
+	 * @return New list
+	 */
+	public static IntArrayList withValues(int... values) {
+		IntArrayList list = new IntArrayList(values.length);
+		System.arraycopy(values, 0, list.values, 0, values.length);
+		list.size = values.length;
+		return list;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	public int get(int index) {
+		this.checkIndex(index);
+		return this.values[index];
+	}
+
+	/**
+	 * Replace the value at index
+	 *
+	 * @return Previous value at index
+	 */
+	public int set(int index, int value) {
+		this.checkIndex(index);
+		int previous = this.values[index];
+		this.values[index] = value;
+		return previous;
+	}
+
+	public void add(int value) {
+		this.ensureCapacity(this.size + 1);
+		this.values[this.size++] = value;
+	}
+
+	public void add(int index, int value) {
+		if (index < 0 || index > this.size) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + this.size);
+		}
+
+		this.ensureCapacity(this.size + 1);
+		System.arraycopy(this.values, index, this.values, index + 1, this.size - index);
+		this.values[index] = value;
+		this.size++;
+	}
+
+	public void addAll(int... values) {
+		this.ensureCapacity(this.size + values.length);
+		System.arraycopy(values, 0, this.values, this.size, values.length);
+		this.size += values.length;
+	}
+
+	public void addAll(IntArrayList list) {
+		this.ensureCapacity(this.size + list.size);
+		System.arraycopy(list.values, 0, this.values, this.size, list.size);
+		this.size += list.size;
+	}
+
+	/**
+	 * Remove the value at index
+	 *
+	 * @return Value removed
+	 */
+	public int removeAt(int index) {
+		this.checkIndex(index);
+		int value = this.values[index];
+		System.arraycopy(this.values, index + 1, this.values, index, this.size - index - 1);
+		this.size--;
+		return value;
+	}
+
+	public int indexOf(int value) {
+		for (int i = 0; i < this.size; i++) {
+			if (this.values[i] == value) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	public boolean contains(int value) {
+		return this.indexOf(value) >= 0;
+	}
+
+	public void clear() {
+		this.size = 0;
+	}
+
+	public void sort() {
+		Arrays.sort(this.values, 0, this.size);
+	}
+
+	public void ensureCapacity(int capacity) {
+		if (capacity > this.values.length) {
+			this.values = Arrays.copyOf(this.values, Math.max(capacity, Math.max(DEFAULT_CAPACITY, this.values.length + (this.values.length >> 1))));
+		}
+	}
+
+	public int[] toArray() {
+		return Arrays.copyOf(this.values, this.size);
+	}
+
+	public boolean equals(Object o) {
+		if (o == this) {
+			return true;
+		} else if (o instanceof IntArrayList) {
+			IntArrayList list = (IntArrayList) o;
+
+			if (list.size != this.size) {
+				return false;
+			}
+
+			for (int i = 0; i < this.size; i++) {
+				if (list.values[i] != this.values[i]) {
+					return false;
+				}
+			}
+
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	public int hashCode() {
+		int hashCode = 1;
+
+		for (int i = 0; i < this.size; i++) {
+			hashCode = 31 * hashCode + this.values[i];
+		}
+
+		return hashCode;
+	}
+
+	public String toString() {
+		return Arrays.toString(this.toArray());
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= this.size) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + this.size);
+		}
+	}
+
+}
@@ -0,0 +1,225 @@
+package mocha.foundation.collections;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from int keys to int values, without boxing.
+ * <p/>
+ * Entries are stored with open addressing and linear probing, removals
+ * shift later entries back rather than leaving tombstones.
+ */
+public class IntIntHashMap {
+	private static final int DEFAULT_CAPACITY = 16;
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private int[] keys;
+	private int[] values;
+	private boolean[] used;
+	private int size;
+	private int mask;
+	private int resizeAt;
+
+	public IntIntHashMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity number of entries to allocate room for
+	 */
+	public IntIntHashMap(int capacity) {
+		this.allocate(HashMaps.tableSize(capacity, LOAD_FACTOR));
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	public boolean containsKey(int key) {
+		return this.slot(key) >= 0;
+	}
+
+	/**
+	 * @return Value for key, or defaultValue if there isn't one
+	 */
+	public int get(int key, int defaultValue) {
+		int slot = this.slot(key);
+		return slot >= 0 ? this.values[slot] : defaultValue;
+	}
+
+	/**
+	 * Set the value for a key
+	 *
+	 * @return Previous value for key, or defaultValue if there wasn't one
+	 */
+	public int put(int key, int value, int defaultValue) {
+		int slot = HashMaps.hash(key) & this.mask;
+
+		while (this.used[slot]) {
+			if (this.keys[slot] == key) {
+				int previous = this.values[slot];
+				this.values[slot] = value;
+				return previous;
+			}
+
+			slot = (slot + 1) & this.mask;
+		}
+
+		this.insert(slot, key, value);
+		return defaultValue;
+	}
+
+	public void put(int key, int value) {
+		this.put(key, value, 0);
+	}
+
+	/**
+	 * Add delta to the value for a key, treating a missing key as 0
+	 *
+	 * @return New value for key
+	 */
+	public int increment(int key, int delta) {
+		int slot = HashMaps.hash(key) & this.mask;
+
+		while (this.used[slot]) {
+			if (this.keys[slot] == key) {
+				return this.values[slot] += delta;
+			}
+
+			slot = (slot + 1) & this.mask;
+		}
+
+		this.insert(slot, key, delta);
+		return delta;
+	}
+
+	/**
+	 * Remove a key
+	 *
+	 * @return true if the key was in the map
+	 */
+	public boolean remove(int key) {
+		int slot = this.slot(key);
+
+		if (slot < 0) {
+			return false;
+		}
+
+		this.size--;
+
+		// Shift back entries that probed past the freed slot
+		int free = slot;
+		slot = (slot + 1) & this.mask;
+
+		while (this.used[slot]) {
+			int home = HashMaps.hash(this.keys[slot]) & this.mask;
+
+			if (((slot - home) & this.mask) >= ((slot - free) & this.mask)) {
+				this.keys[free] = this.keys[slot];
+				this.values[free] = this.values[slot];
+				free = slot;
+			}
+
+			slot = (slot + 1) & this.mask;
+		}
+
+		this.used[free] = false;
+		return true;
+	}
+
+	public void clear() {
+		if (this.size > 0) {
+			Arrays.fill(this.used, false);
+			this.size = 0;
+		}
+	}
+
+	/**
+	 * @return Keys in no particular order
+	 */
+	public int[] keys() {
+		int[] keys = new int[this.size];
+		int idx = 0;
+
+		for (int slot = 0; slot < this.used.length; slot++) {
+			if (this.used[slot]) {
+				keys[idx++] = this.keys[slot];
+			}
+		}
+
+		return keys;
+	}
+
+	public String toString() {
+		StringBuilder builder = new StringBuilder("{");
+
+		for (int slot = 0; slot < this.used.length; slot++) {
+			if (this.used[slot]) {
+				if (builder.length() > 1) {
+					builder.append(", ");
+				}
+
+				builder.append(this.keys[slot]).append('=').append(this.values[slot]);
+			}
+		}
+
+		return builder.append('}').toString();
+	}
+
+	private int slot(int key) {
+		int slot = HashMaps.hash(key) & this.mask;
+
+		while (this.used[slot]) {
+			if (this.keys[slot] == key) {
+				return slot;
+			}
+
+			slot = (slot + 1) & this.mask;
+		}
+
+		return -1;
+	}
+
+	private void insert(int slot, int key, int value) {
+		this.keys[slot] = key;
+		this.values[slot] = value;
+		this.used[slot] = true;
+
+		if (++this.size > this.resizeAt) {
+			this.resize(this.keys.length << 1);
+		}
+	}
+
+	private void allocate(int tableSize) {
+		this.keys = new int[tableSize];
+		this.values = new int[tableSize];
+		this.used = new boolean[tableSize];
+		this.mask = tableSize - 1;
+		this.resizeAt = (int) (tableSize * LOAD_FACTOR);
+	}
+
+	private void resize(int tableSize) {
+		int[] keys = this.keys;
+		int[] values = this.values;
+		boolean[] used = this.used;
+		this.allocate(tableSize);
+
+		for (int i = 0; i < used.length; i++) {
+			if (used[i]) {
+				int slot = HashMaps.hash(keys[i]) & this.mask;
+
+				while (this.used[slot]) {
+					slot = (slot + 1) & this.mask;
+				}
+
+				this.keys[slot] = keys[i];
+				this.values[slot] = values[i];
+				this.used[slot] = true;
+			}
+		}
+	}
+
+}
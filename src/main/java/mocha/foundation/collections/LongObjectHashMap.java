@@ -0,0 +1,229 @@
+package mocha.foundation.collections;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hash map from long keys to objects, without boxing the keys.
+ * <p/>
+ * Entries are stored with open addressing and linear probing, removals
+ * shift later entries back rather than leaving tombstones.  Null values
+ * aren't stored, putting null removes the key.
+ *
+ * @param <V> value type
+ */
+public class LongObjectHashMap<V> {
+	private static final int DEFAULT_CAPACITY = 16;
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private long[] keys;
+	private Object[] values;
+	private int size;
+	private int mask;
+	private int resizeAt;
+
+	public LongObjectHashMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity number of entries to allocate room for
+	 */
+	public LongObjectHashMap(int capacity) {
+		this.allocate(HashMaps.tableSize(capacity, LOAD_FACTOR));
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	public boolean containsKey(long key) {
+		return this.slot(key) >= 0;
+	}
+
+	/**
+	 * @return Value for key, or null if there isn't one
+	 */
+	public V get(long key) {
+		return this.get(key, null);
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(long key, V defaultValue) {
+		int slot = this.slot(key);
+		return slot >= 0 ? (V) this.values[slot] : defaultValue;
+	}
+
+	/**
+	 * Set the value for a key
+	 *
+	 * @param key   key
+	 * @param value value, or null to remove the key
+	 *
+	 * @return Previous value for key, or null if there wasn't one
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if (value == null) {
+			return this.remove(key);
+		}
+
+		int slot = HashMaps.hash(key) & this.mask;
+
+		while (this.values[slot] != null) {
+			if (this.keys[slot] == key) {
+				V previous = (V) this.values[slot];
+				this.values[slot] = value;
+				return previous;
+			}
+
+			slot = (slot + 1) & this.mask;
+		}
+
+		this.keys[slot] = key;
+		this.values[slot] = value;
+
+		if (++this.size > this.resizeAt) {
+			this.resize(this.keys.length << 1);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Remove a key
+	 *
+	 * @return Value removed, or null if there wasn't one
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		int slot = this.slot(key);
+
+		if (slot < 0) {
+			return null;
+		}
+
+		V previous = (V) this.values[slot];
+		this.size--;
+
+		// Shift back entries that probed past the freed slot
+		int free = slot;
+		slot = (slot + 1) & this.mask;
+
+		while (this.values[slot] != null) {
+			int home = HashMaps.hash(this.keys[slot]) & this.mask;
+
+			if (((slot - home) & this.mask) >= ((slot - free) & this.mask)) {
+				this.keys[free] = this.keys[slot];
+				this.values[free] = this.values[slot];
+				free = slot;
+			}
+
+			slot = (slot + 1) & this.mask;
+		}
+
+		this.values[free] = null;
+		return previous;
+	}
+
+	public void clear() {
+		if (this.size > 0) {
+			Arrays.fill(this.values, null);
+			this.size = 0;
+		}
+	}
+
+	/**
+	 * @return Keys in no particular order
+	 */
+	public long[] keys() {
+		long[] keys = new long[this.size];
+		int idx = 0;
+
+		for (int slot = 0; slot < this.values.length; slot++) {
+			if (this.values[slot] != null) {
+				keys[idx++] = this.keys[slot];
+			}
+		}
+
+		return keys;
+	}
+
+	/**
+	 * @return Values in no particular order
+	 */
+	@SuppressWarnings("unchecked")
+	public List<V> values() {
+		List<V> values = new ArrayList<V>(this.size);
+
+		for (Object value : this.values) {
+			if (value != null) {
+				values.add((V) value);
+			}
+		}
+
+		return values;
+	}
+
+	public String toString() {
+		StringBuilder builder = new StringBuilder("{");
+
+		for (int slot = 0; slot < this.values.length; slot++) {
+			if (this.values[slot] != null) {
+				if (builder.length() > 1) {
+					builder.append(", ");
+				}
+
+				builder.append(this.keys[slot]).append('=').append(this.values[slot]);
+			}
+		}
+
+		return builder.append('}').toString();
+	}
+
+	private int slot(long key) {
+		int slot = HashMaps.hash(key) & this.mask;
+
+		while (this.values[slot] != null) {
+			if (this.keys[slot] == key) {
+				return slot;
+			}
+
+			slot = (slot + 1) & this.mask;
+		}
+
+		return -1;
+	}
+
+	private void allocate(int tableSize) {
+		this.keys = new long[tableSize];
+		this.values = new Object[tableSize];
+		this.mask = tableSize - 1;
+		this.resizeAt = (int) (tableSize * LOAD_FACTOR);
+	}
+
+	private void resize(int tableSize) {
+		long[] keys = this.keys;
+		Object[] values = this.values;
+		this.allocate(tableSize);
+
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != null) {
+				int slot = HashMaps.hash(keys[i]) & this.mask;
+
+				while (this.values[slot] != null) {
+					slot = (slot + 1) & this.mask;
+				}
+
+				this.keys[slot] = keys[i];
+				this.values[slot] = values[i];
+			}
+		}
+	}
+
+}
@@ -1,43 +1,379 @@
 package mocha.foundation.concurrent;
 
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
-abstract class BackgroundQueue extends Queue {
+abstract class BackgroundQueue extends ScheduledQueue {
 	private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
-	private static final int CORE_POOL_SIZE = CPU_COUNT + 1;
 	private static final int MAXIMUM_POOL_SIZE = CPU_COUNT * 2 + 1;
 	private static final int KEEP_ALIVE = 1;
 
-	private final Executor executor;
+	// Started entries trimmed from the head of admitted per post, enough to
+	// keep it from growing while never walking more than a couple of entries
+	private static final int TRIM_LIMIT = 2;
+
 	private final String label;
 
-	static ThreadPoolExecutor createConcurrentThreadPoolExecutor(String label, Priority priority, boolean global) {
-		return new ScalingThreadPoolExecutor(global ? CORE_POOL_SIZE : 0, MAXIMUM_POOL_SIZE, KEEP_ALIVE, TimeUnit.SECONDS, new PriorityThreadFactory(label, priority));
-	}
+	// Bounded queue state, only used once a capacity has been set
+	private volatile int capacity;
+	private volatile OverflowPolicy overflowPolicy;
+	private final AtomicInteger depth = new AtomicInteger();
+	private final ConcurrentLinkedQueue<Entry> admitted = new ConcurrentLinkedQueue<Entry>();
+	private final ConcurrentHashMap<Object, Entry> coalescing = new ConcurrentHashMap<Object, Entry>();
+	private final Object capacityLock = new Object();
+	private volatile int blockedProducers;
 
-	static ThreadPoolExecutor createSerialThreadPoolExecutor(String label, Priority priority, boolean global) {
-		return new ScalingThreadPoolExecutor(global ? 1 : 0, 1, KEEP_ALIVE, TimeUnit.SECONDS, new PriorityThreadFactory(label, priority));
+	static Executor createConcurrentExecutor(String label, Priority priority) {
+		return new ScalingExecutor(0, MAXIMUM_POOL_SIZE, KEEP_ALIVE, TimeUnit.SECONDS, new PriorityThreadFactory(label, priority));
 	}
 
-	protected BackgroundQueue(Executor executor, String label) {
-		this.executor = executor;
+	protected BackgroundQueue(String label) {
 		this.label = label;
 	}
 
-	public void post(final Runnable runnable) {
-		this.executor.execute(new Runnable() {
-			public void run() {
-				try {
-					runnable.run();
-				} catch (final Throwable t) {
-					MWarn(t, "Error executing on queue " + label);
+	/**
+	 * Hand a task to the queue's executor, bypassing any capacity limit
+	 *
+	 * @param runnable task to be executed
+	 */
+	abstract void enqueue(Runnable runnable);
+
+	/**
+	 * @inheritDoc
+	 */
+	public void post(Runnable runnable) {
+		if (this.capacity == 0) {
+			this.enqueue(runnable);
+		} else if (!this.admit(runnable, runnable, false)) {
+			discarded(runnable);
+		}
+	}
+
+	/**
+	 * Delayed tasks coming due on a full queue that blocks or runs tasks on
+	 * the caller are enqueued past the capacity, since the timer thread must
+	 * never wait on a queue or run a task itself.  The drop and coalesce
+	 * policies never do either, so they apply as usual.
+	 */
+	void postExpired(Runnable runnable) {
+		OverflowPolicy overflowPolicy = this.overflowPolicy;
+
+		if (this.capacity == 0) {
+			this.enqueue(runnable);
+		} else if (overflowPolicy == OverflowPolicy.BLOCK || overflowPolicy == OverflowPolicy.CALLER_RUNS) {
+			if (!this.admit(runnable, runnable, true)) {
+				this.enqueue(runnable);
+			}
+		} else if (!this.admit(runnable, runnable, false)) {
+			discarded(runnable);
+		}
+	}
+
+	/**
+	 * Post a task to be executed on this queue, only if it has room for it.
+	 * Never blocks, runs or drops anything, regardless of the overflow policy.
+	 *
+	 * @param runnable task to be executed
+	 *
+	 * @return false if the queue is at capacity and the task was not posted
+	 */
+	public boolean tryPost(Runnable runnable) {
+		if (this.capacity == 0) {
+			this.enqueue(runnable);
+			return true;
+		} else {
+			return this.admit(runnable, runnable, true);
+		}
+	}
+
+	/**
+	 * Post a task that replaces any pending task posted with the same key,
+	 * when the queue's overflow policy is {@link OverflowPolicy#COALESCE}.
+	 * With any other policy, this is the same as {@link #post(Runnable)}.
+	 * <p/>
+	 * {@link #post(Runnable)} uses the task itself as the key.
+	 *
+	 * @param key      key identifying tasks that can replace each other, if null the task itself is used
+	 * @param runnable task to be executed
+	 */
+	public void postCoalesced(Object key, Runnable runnable) {
+		if (key == null) {
+			key = runnable;
+		}
+
+		if (this.capacity == 0) {
+			this.enqueue(runnable);
+		} else if (!this.admit(key, runnable, false)) {
+			discarded(runnable);
+		}
+	}
+
+	/**
+	 * Limit the number of tasks waiting to run on this queue.
+	 * <p/>
+	 * Can be changed while tasks are being posted, tasks already pending
+	 * don't count towards the new capacity.  Delayed tasks count once their delay
+	 * elapses, and barriers are never limited.  Work items that are dropped
+	 * or replaced are cancelled, so their continuations still run.
+	 * <p/>
+	 * {@link OverflowPolicy#BLOCK} and {@link OverflowPolicy#CALLER_RUNS} should
+	 * not be used for tasks posted from the queue's own tasks, as the former can
+	 * deadlock and the latter breaks the execution order of a serial queue.
+	 *
+	 * @param capacity       maximum number of pending tasks, or 0 for unbounded
+	 * @param overflowPolicy what to do with tasks posted while at capacity
+	 */
+	public void setCapacity(int capacity, OverflowPolicy overflowPolicy) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Capacity can not be negative");
+		}
+
+		synchronized (this.capacityLock) {
+			this.overflowPolicy = overflowPolicy == null ? OverflowPolicy.BLOCK : overflowPolicy;
+
+			// Only trimmed while dropping the oldest, so entries left from before would never go away
+			if (this.overflowPolicy != OverflowPolicy.DROP_OLDEST) {
+				this.admitted.clear();
+			}
+
+			this.capacity = capacity;
+			this.capacityLock.notifyAll();
+		}
+	}
+
+	/**
+	 * @return Maximum number of pending tasks, or 0 if unbounded
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * @return What this queue does with tasks posted while at capacity
+	 */
+	public OverflowPolicy getOverflowPolicy() {
+		return this.overflowPolicy;
+	}
+
+	private boolean admit(Object key, Runnable runnable, boolean tryOnly) {
+		OverflowPolicy overflowPolicy = this.overflowPolicy;
+
+		if (overflowPolicy == OverflowPolicy.COALESCE) {
+			Entry pending = this.coalescing.get(key);
+
+			if (pending != null) {
+				Runnable replaced = pending.replace(runnable);
+
+				if (replaced != null) {
+					discarded(replaced);
+					return true;
+				}
+			}
+		}
+
+		while (true) {
+			int depth = this.depth.get();
+			int capacity = this.capacity;
+
+			if (depth < capacity || capacity == 0) {
+				if (!this.depth.compareAndSet(depth, depth + 1)) {
+					continue;
+				}
+
+				Entry entry = new Entry(key, runnable);
+
+				if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+					Entry oldest;
+
+					for (int trimmed = 0; trimmed < TRIM_LIMIT && (oldest = this.admitted.peek()) != null && !oldest.isPending(); trimmed++) {
+						this.admitted.remove(oldest);
+					}
+
+					this.admitted.offer(entry);
+				} else if (overflowPolicy == OverflowPolicy.COALESCE) {
+					this.coalescing.put(key, entry);
+				}
+
+				this.enqueue(entry);
+				return true;
+			}
+
+			if (tryOnly) {
+				return false;
+			}
+
+			switch (overflowPolicy) {
+				case BLOCK:
+					this.awaitCapacity();
+					break;
+				case CALLER_RUNS:
+					this.perform(this.track(runnable));
+					return true;
+				case DROP_OLDEST:
+					Entry oldest;
+					boolean dropped = false;
+
+					while (!dropped && (oldest = this.admitted.poll()) != null) {
+						dropped = oldest.drop();
+					}
+
+					// Nothing older is still waiting, drop the new task instead
+					if (!dropped) {
+						return false;
+					}
+					break;
+				case DROP_NEWEST:
+				case COALESCE:
+				default:
+					return false;
+			}
+		}
+	}
+
+	/**
+	 * Cancel a work item that was dropped, so its continuations still hear about it
+	 */
+	private static void discarded(Runnable runnable) {
+		if (runnable instanceof WorkItem) {
+			((WorkItem<?>) runnable).cancel();
+		}
+	}
+
+	private void awaitCapacity() {
+		boolean interrupted = false;
 
-					if (getExceptionHandler() != null) {
-						getExceptionHandler().handleException(t, BackgroundQueue.this);
+		synchronized (this.capacityLock) {
+			this.blockedProducers++;
+
+			try {
+				while (this.depth.get() >= this.capacity && this.capacity > 0) {
+					try {
+						this.capacityLock.wait();
+					} catch (InterruptedException e) {
+						interrupted = true;
 					}
 				}
+			} finally {
+				this.blockedProducers--;
+			}
+		}
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void released(Entry entry) {
+		this.depth.decrementAndGet();
+
+		this.coalescing.remove(entry.key, entry);
+
+		if (this.blockedProducers > 0) {
+			synchronized (this.capacityLock) {
+				this.capacityLock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * A task admitted to a bounded queue, which frees its slot when it
+	 * starts, or when it's dropped or replaced before then.
+	 */
+	private class Entry implements Runnable {
+		private final Object key;
+		private Runnable runnable;
+		private boolean pending = true;
+
+		Entry(Object key, Runnable runnable) {
+			this.key = key;
+			this.runnable = runnable;
+		}
+
+		synchronized boolean isPending() {
+			return this.pending;
+		}
+
+		/**
+		 * @return Task that was replaced, or null if this entry already started or was dropped
+		 */
+		synchronized Runnable replace(Runnable runnable) {
+			Runnable replaced = null;
+
+			if (this.pending) {
+				replaced = this.runnable;
+				this.runnable = runnable;
+			}
+
+			return replaced;
+		}
+
+		boolean drop() {
+			Runnable runnable;
+
+			synchronized (this) {
+				if (!this.pending) {
+					return false;
+				}
+
+				this.pending = false;
+				runnable = this.runnable;
+				this.runnable = null;
+			}
+
+			released(this);
+			discarded(runnable);
+			return true;
+		}
+
+		public void run() {
+			Runnable runnable;
+
+			synchronized (this) {
+				if (!this.pending) {
+					return;
+				}
+
+				this.pending = false;
+				runnable = this.runnable;
+				this.runnable = null;
+			}
+
+			released(this);
+			runnable.run();
+		}
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public void post(long delayInMillis, Runnable runnable) {
+		if (delayInMillis <= 0) {
+			this.post(runnable);
+		} else {
+			TimerWheel.get().schedule(delayInMillis, this, runnable);
+		}
+	}
+
+	/**
+	 * Run a task on the current thread, passing anything it throws
+	 * to this queue's exception handler.
+	 *
+	 * @param runnable task to be executed
+	 */
+	final void perform(Runnable runnable) {
+		Frame parent = this.enter();
+
+		try {
+			runnable.run();
+		} catch (final Throwable t) {
+			MWarn(t, "Error executing on queue " + label);
+
+			if (getExceptionHandler() != null) {
+				getExceptionHandler().handleException(t, BackgroundQueue.this);
 			}
-		});
+		} finally {
+			exit(parent);
+		}
 	}
 
 	public String getLabel() {
@@ -1,15 +1,36 @@
 package mocha.foundation.concurrent;
 
+import mocha.foundation.IndexedBlock;
+
+import java.util.ArrayDeque;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 public class ConcurrentQueue extends BackgroundQueue {
+	private static final int PARALLELISM = Math.max(2, Runtime.getRuntime().availableProcessors());
+	private static final int BARRIER = 1 << 30;
 	private static Map<Priority, ConcurrentQueue> globalQueues = new HashMap<>();
 
+	private final Executor executor;
+	private final boolean global;
+
+	// Number of tasks handed to the executor and not yet finished, with the
+	// BARRIER bit set while a barrier is pending or running.
+	private final AtomicInteger state = new AtomicInteger();
+
+	// Barriers and the tasks posted after them, guarded by itself
+	private final ArrayDeque<Runnable> held = new ArrayDeque<Runnable>();
+
 	/**
 	 * Get a global queue based on the priority you request
 	 * Queue's with higher priorities will have their tasks
 	 * executed before jobs with lower priorities.
+	 * <p/>
+	 * Global queues don't own any threads, they are views onto a
+	 * single work-stealing scheduler with one worker per core.
 	 *
 	 * @param priority queue priority
 	 *
@@ -20,7 +41,7 @@ public class ConcurrentQueue extends BackgroundQueue {
 		ConcurrentQueue globalQueue = globalQueues.get(priority);
 
 		if (globalQueue == null) {
-			globalQueue = new ConcurrentQueue("mocha.foundation.global." + priority, priority);
+			globalQueue = new ConcurrentQueue("mocha.foundation.global." + priority, Scheduler.get().getExecutor(priority), true);
 			globalQueues.put(priority, globalQueue);
 		}
 
@@ -34,7 +55,7 @@ public class ConcurrentQueue extends BackgroundQueue {
 	 * @param label label for the queue, may be null
 	 */
 	public ConcurrentQueue(String label) {
-		this(label, Priority.DEFAULT, false);
+		this(label, Priority.DEFAULT);
 	}
 
 	/**
@@ -44,18 +65,248 @@ public class ConcurrentQueue extends BackgroundQueue {
 	 * @param priority Priority for the queue
 	 */
 	public ConcurrentQueue(String label, Priority priority) {
-		this(label, priority, false);
+		this(label, createConcurrentExecutor(label, priority), false);
 	}
 
 	/**
 	 * Create a new queue
 	 *
 	 * @param label    label for the queue, may be null
-	 * @param priority Priority for the queue
+	 * @param executor Executor to run tasks on
 	 * @param global   Whether or not this is a global queue
 	 */
-	private ConcurrentQueue(String label, Priority priority, boolean global) {
-		super(createConcurrentThreadPoolExecutor(label, priority, global), label);
+	private ConcurrentQueue(String label, Executor executor, boolean global) {
+		super(label);
+		this.executor = executor;
+		this.global = global;
+	}
+
+	void enqueue(Runnable runnable) {
+		runnable = this.track(runnable);
+
+		if (!this.global) {
+			int state;
+
+			do {
+				state = this.state.get();
+
+				if ((state & BARRIER) != 0 && this.hold(runnable)) {
+					return;
+				}
+			} while ((state & BARRIER) != 0 || !this.state.compareAndSet(state, state + 1));
+		}
+
+		this.dispatch(runnable);
+	}
+
+	/**
+	 * Post a barrier task to be executed on this queue
+	 * <p/>
+	 * The barrier waits for every task posted before it to finish, then
+	 * runs on its own.  Tasks posted after it are held until it's done, and
+	 * then run concurrently again up until the next barrier.  This allows
+	 * many readers to share the queue while writes stay exclusive and
+	 * ordered, without any locking by the caller.
+	 * <p/>
+	 * Global queues are shared by everyone, so barriers posted to them
+	 * behave like {@link #post(Runnable)}.
+	 *
+	 * @param runnable task to be executed
+	 */
+	public void postBarrier(Runnable runnable) {
+		if (this.global) {
+			this.post(runnable);
+			return;
+		}
+
+		runnable = this.track(runnable);
+
+		synchronized (this.held) {
+			this.held.offer(new Barrier(runnable));
+
+			int state;
+
+			do {
+				state = this.state.get();
+
+				if ((state & BARRIER) != 0) {
+					// Already waiting on an earlier barrier
+					return;
+				}
+			} while (!this.state.compareAndSet(state, state | BARRIER));
+
+			if (state == 0) {
+				this.advance();
+			}
+		}
+	}
+
+	private void dispatch(final Runnable runnable) {
+		this.executor.execute(new Runnable() {
+			public void run() {
+				perform(runnable);
+
+				if (!global && state.decrementAndGet() == BARRIER) {
+					advance();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Holds a task behind a pending barrier
+	 *
+	 * @return false if the barrier has already been cleared
+	 */
+	private boolean hold(Runnable runnable) {
+		synchronized (this.held) {
+			if ((this.state.get() & BARRIER) == 0) {
+				return false;
+			}
+
+			this.held.offer(runnable);
+			return true;
+		}
+	}
+
+	/**
+	 * Called once nothing is in flight while a barrier is pending.  Runs the
+	 * barrier at the head of the held tasks, or if the last barrier just
+	 * finished, releases the tasks behind it up until the next barrier.
+	 */
+	private void advance() {
+		synchronized (this.held) {
+			if (this.state.get() != BARRIER) {
+				return;
+			}
+
+			Runnable next = this.held.peek();
+
+			if (next instanceof Barrier) {
+				this.held.poll();
+				this.state.set(BARRIER | 1);
+				this.dispatch(((Barrier) next).runnable);
+				return;
+			}
+
+			while ((next = this.held.peek()) != null && !(next instanceof Barrier)) {
+				this.held.poll();
+				this.state.incrementAndGet();
+				this.dispatch(next);
+			}
+
+			if (next == null) {
+				int state;
+
+				do {
+					state = this.state.get();
+				} while (!this.state.compareAndSet(state, state & ~BARRIER));
+			}
+		}
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public void apply(int iterations, IndexedBlock block) {
+		if (iterations <= 1) {
+			super.apply(iterations, block);
+			return;
+		}
+
+		Apply apply = new Apply(iterations, block);
+
+		for (int helpers = Math.min(PARALLELISM, iterations) - 1; helpers > 0; helpers--) {
+			this.enqueue(apply);
+		}
+
+		apply.run();
+		apply.await();
+	}
+
+	/**
+	 * Shared state for a single {@link #apply} call.  The caller and each
+	 * helper posted to the queue repeatedly claim the next chunk of indexes
+	 * until none are left.  Chunks start large and shrink as the range is
+	 * used up, so threads that finish early pick up the remaining work in
+	 * small pieces.  Since the caller claims chunks as well, the call still
+	 * completes if none of the helpers get to run.
+	 */
+	private static class Apply implements Runnable {
+		private final int iterations;
+		private final IndexedBlock block;
+		private final Thread caller;
+		private final AtomicInteger next = new AtomicInteger();
+		private final AtomicInteger completed = new AtomicInteger();
+		private volatile Throwable error;
+
+		Apply(int iterations, IndexedBlock block) {
+			this.iterations = iterations;
+			this.block = block;
+			this.caller = Thread.currentThread();
+		}
+
+		public void run() {
+			int start;
+
+			while ((start = this.next.get()) < this.iterations) {
+				int end = Math.min(this.iterations, start + Math.max(1, (this.iterations - start) / (PARALLELISM * 2)));
+
+				if (!this.next.compareAndSet(start, end)) {
+					continue;
+				}
+
+				try {
+					for (int index = start; index < end; index++) {
+						this.block.block(index);
+					}
+				} catch (Throwable t) {
+					if (this.error == null) {
+						this.error = t;
+					}
+
+					// Give up on every unclaimed index and count them as done
+					int skipped = this.next.getAndSet(this.iterations);
+					this.complete(this.iterations - skipped);
+				} finally {
+					this.complete(end - start);
+				}
+			}
+		}
+
+		private void complete(int count) {
+			if (count > 0 && this.completed.addAndGet(count) == this.iterations) {
+				LockSupport.unpark(this.caller);
+			}
+		}
+
+		void await() {
+			while (this.completed.get() < this.iterations) {
+				LockSupport.park(this);
+			}
+
+			Throwable error = this.error;
+
+			if (error instanceof RuntimeException) {
+				throw (RuntimeException) error;
+			} else if (error instanceof Error) {
+				throw (Error) error;
+			} else if (error != null) {
+				throw new RuntimeException(error);
+			}
+		}
+	}
+
+	private static class Barrier implements Runnable {
+		final Runnable runnable;
+
+		Barrier(Runnable runnable) {
+			this.runnable = runnable;
+		}
+
+		public void run() {
+			this.runnable.run();
+		}
 	}
 
 }
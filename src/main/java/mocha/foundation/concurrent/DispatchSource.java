@@ -0,0 +1,158 @@
+package mocha.foundation.concurrent;
+
+import mocha.foundation.MObject;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces high frequency events into a single handler call.
+ * <p/>
+ * Producers merge values into the source from any thread.  The first merge
+ * after the handler last ran posts it to the target queue, every merge that
+ * arrives before it runs is folded into the same call, so the handler runs
+ * at most once per pass of the target queue no matter how many events
+ * arrive in between.  The handler never runs more than once at a time, even
+ * on a concurrent queue, and its calls are never dropped by a bounded queue.
+ */
+public final class DispatchSource extends MObject {
+	private final MergeType mergeType;
+	private final Queue queue;
+	private final EventHandler eventHandler;
+	private final AtomicLong data = new AtomicLong();
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private volatile boolean cancelled;
+	private final Runnable fire = new Runnable() {
+		public void run() {
+			fire();
+		}
+	};
+
+	/**
+	 * How merged values are combined
+	 */
+	public enum MergeType {
+		/**
+		 * Values are added together, e.g. for bytes downloaded or events counted
+		 */
+		ADD,
+
+		/**
+		 * Values are bitwise or'ed together, e.g. for sets of flags
+		 */
+		OR
+	}
+
+	public interface EventHandler {
+
+		/**
+		 * Called on the target queue with everything merged since the last call
+		 *
+		 * @param data merged value, never 0
+		 */
+		public void handleEvent(long data);
+
+	}
+
+	/**
+	 * Create a new dispatch source
+	 *
+	 * @param mergeType    how merged values are combined
+	 * @param queue        queue to run the handler on
+	 * @param eventHandler handler to run with merged values
+	 */
+	public DispatchSource(MergeType mergeType, Queue queue, EventHandler eventHandler) {
+		if (mergeType == null || queue == null || eventHandler == null) {
+			throw new IllegalArgumentException("DispatchSource requires a merge type, queue and event handler.");
+		}
+
+		this.mergeType = mergeType;
+		this.queue = queue;
+		this.eventHandler = eventHandler;
+	}
+
+	/**
+	 * Merge a value into the source, scheduling the handler if it isn't
+	 * already pending.  Merging 0 has no effect.
+	 *
+	 * @param value value to merge
+	 */
+	public void merge(long value) {
+		if (value == 0 || this.cancelled) {
+			return;
+		}
+
+		if (this.mergeType == MergeType.ADD) {
+			this.data.addAndGet(value);
+		} else {
+			long current;
+
+			do {
+				current = this.data.get();
+			} while ((current | value) != current && !this.data.compareAndSet(current, current | value));
+		}
+
+		if (this.scheduled.compareAndSet(false, true)) {
+			this.schedule();
+		}
+	}
+
+	/**
+	 * Stop the handler from running again.  A call already in progress isn't interrupted.
+	 */
+	public void cancel() {
+		this.cancelled = true;
+	}
+
+	/**
+	 * @return true if the source was cancelled
+	 */
+	public boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	/**
+	 * @return value merged since the handler last ran
+	 */
+	public long getPendingData() {
+		return this.data.get();
+	}
+
+	private void schedule() {
+		try {
+			// Like a serial queue's drain, the call must not be dropped or blocked by a bounded queue
+			if (this.queue instanceof BackgroundQueue) {
+				((BackgroundQueue) this.queue).enqueue(this.fire);
+			} else {
+				this.queue.post(this.fire);
+			}
+		} catch (RuntimeException e) {
+			this.scheduled.set(false);
+			throw e;
+		}
+	}
+
+	private void fire() {
+		long data = this.data.getAndSet(0);
+
+		try {
+			if (data != 0 && !this.cancelled) {
+				this.eventHandler.handleEvent(data);
+			}
+		} finally {
+			// Only cleared once the handler returns, so calls never overlap.  Merges
+			// made while it ran saw the flag still set and didn't schedule a call,
+			// so check for their data after clearing it.
+			this.scheduled.set(false);
+
+			if (this.data.get() != 0 && !this.cancelled && this.scheduled.compareAndSet(false, true)) {
+				this.schedule();
+			}
+		}
+	}
+
+	protected String toStringExtra() {
+		return String.format("mergeType = %s, queue = %s, pendingData = %d, cancelled = %b", this.mergeType, this.queue.getLabel(), this.data.get(), this.cancelled);
+	}
+
+}
@@ -0,0 +1,281 @@
+package mocha.foundation.concurrent;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import mocha.foundation.IndexedBlock;
+import mocha.foundation.MObject;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Time-slices large amounts of small main thread work across frames.
+ * <p/>
+ * Units of work are grouped into batches.  Each slice runs as many units
+ * as fit in the frame budget, then posts the next slice back to the main
+ * looper so input events and drawing queued in the meantime get to run
+ * before the batch continues.  Batches run in the order they were posted,
+ * and units within a batch run in order.
+ *
+ * @see MainQueue#getFrameScheduler()
+ */
+public final class FrameScheduler extends MObject {
+	/**
+	 * Duration of a single frame at ~60fps, in milliseconds
+	 */
+	public static final long FRAME_DURATION = 17;
+
+	/**
+	 * Default budget for a single slice, leaving the rest of the frame for layout and drawing
+	 */
+	public static final long DEFAULT_BUDGET = 8;
+
+	private final Handler handler;
+	private final ConcurrentLinkedQueue<Batch> batches;
+	private final AtomicBoolean scheduled;
+	private final Runnable slice;
+	private volatile long budgetInNanos;
+
+	private volatile long slicesTotal;
+	private volatile long batchesCompleted;
+	private volatile int peakFramesSpanned;
+
+	/**
+	 * A batch of units scheduled on a frame scheduler
+	 */
+	public static final class Batch extends MObject {
+		private final int count;
+		private final IndexedBlock block;
+		private final Runnable completion;
+		private int index;
+		private long lastSlice = -1;
+		private volatile int framesSpanned;
+		private volatile boolean cancelled;
+		private volatile boolean done;
+
+		private Batch(int count, IndexedBlock block, Runnable completion) {
+			this.count = count;
+			this.block = block;
+			this.completion = completion;
+		}
+
+		/**
+		 * Stop running units from this batch.  Units that already ran aren't
+		 * undone and the completion isn't called.
+		 */
+		public void cancel() {
+			this.cancelled = true;
+		}
+
+		/**
+		 * @return true if the batch was cancelled
+		 */
+		public boolean isCancelled() {
+			return this.cancelled;
+		}
+
+		/**
+		 * @return true once every unit in the batch has run
+		 */
+		public boolean isDone() {
+			return this.done;
+		}
+
+		/**
+		 * @return total number of units in the batch
+		 */
+		public int getCount() {
+			return this.count;
+		}
+
+		/**
+		 * @return number of frames the batch has run in so far
+		 */
+		public int getFramesSpanned() {
+			return this.framesSpanned;
+		}
+
+		protected String toStringExtra() {
+			return String.format("count = %d, framesSpanned = %d, done = %b, cancelled = %b", this.count, this.framesSpanned, this.done, this.cancelled);
+		}
+	}
+
+	FrameScheduler(Handler handler) {
+		this.handler = handler;
+		this.batches = new ConcurrentLinkedQueue<Batch>();
+		this.scheduled = new AtomicBoolean();
+		this.budgetInNanos = DEFAULT_BUDGET * 1000000;
+		this.slice = new Runnable() {
+			public void run() {
+				runSlice();
+			}
+		};
+	}
+
+	/**
+	 * Schedule a batch of units
+	 *
+	 * @param units      units to run, in order
+	 * @param completion run on the main thread after the last unit, or null
+	 *
+	 * @return Scheduled batch
+	 */
+	public Batch post(final List<? extends Runnable> units, Runnable completion) {
+		return this.post(units.size(), new IndexedBlock() {
+			public void block(int index) {
+				units.get(index).run();
+			}
+		}, completion);
+	}
+
+	/**
+	 * Schedule a batch of units, one for every index in [0, count)
+	 *
+	 * @param count      number of units
+	 * @param block      block to run for each index, in order
+	 * @param completion run on the main thread after the last unit, or null
+	 *
+	 * @return Scheduled batch
+	 */
+	public Batch post(int count, IndexedBlock block, Runnable completion) {
+		Batch batch = new Batch(count, block, completion);
+		this.batches.offer(batch);
+
+		if (this.scheduled.compareAndSet(false, true)) {
+			this.handler.post(this.slice);
+		}
+
+		return batch;
+	}
+
+	/**
+	 * Set how long a single slice may run before yielding to the looper.
+	 * At least one unit always runs per slice, so a single slow unit can
+	 * still exceed it.
+	 *
+	 * @param budgetInMillis slice budget, clamped to [1, FRAME_DURATION]
+	 */
+	public void setBudget(long budgetInMillis) {
+		this.budgetInNanos = Math.max(1, Math.min(FRAME_DURATION, budgetInMillis)) * 1000000;
+	}
+
+	/**
+	 * @return slice budget in milliseconds
+	 */
+	public long getBudget() {
+		return this.budgetInNanos / 1000000;
+	}
+
+	/**
+	 * @return number of slices run, at most one per frame
+	 */
+	public long getSlicesTotal() {
+		return this.slicesTotal;
+	}
+
+	/**
+	 * @return number of batches that ran to completion
+	 */
+	public long getBatchesCompleted() {
+		return this.batchesCompleted;
+	}
+
+	/**
+	 * @return the most frames any single completed batch spanned
+	 */
+	public int getPeakFramesSpanned() {
+		return this.peakFramesSpanned;
+	}
+
+	private void runSlice() {
+		boolean yielded = false;
+
+		try {
+			yielded = this.runUnits();
+		} finally {
+			// Also reached if a unit or completion throws an Error, so the
+			// scheduler isn't left marked as scheduled with nothing posted.
+			if (!yielded) {
+				this.scheduled.set(false);
+
+				// A batch may have been posted after the last peek but before the flag was cleared
+				if (!this.batches.isEmpty() && this.scheduled.compareAndSet(false, true)) {
+					this.reschedule();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Run units until the budget is used up or there are none left
+	 *
+	 * @return true if the slice ran out of budget and the next one was posted
+	 */
+	private boolean runUnits() {
+		long deadline = System.nanoTime() + this.budgetInNanos;
+		long slice = this.slicesTotal++;
+		boolean ranUnit = false;
+
+		Batch batch;
+		while ((batch = this.batches.peek()) != null) {
+			if (batch.cancelled) {
+				this.batches.poll();
+				continue;
+			}
+
+			if (batch.lastSlice != slice) {
+				batch.lastSlice = slice;
+				batch.framesSpanned++;
+			}
+
+			while (batch.index < batch.count && !batch.cancelled) {
+				if (ranUnit && System.nanoTime() >= deadline) {
+					this.reschedule();
+					return true;
+				}
+
+				int index = batch.index++;
+				ranUnit = true;
+
+				try {
+					batch.block.block(index);
+				} catch (RuntimeException e) {
+					MWarn(e, "Unit %d of frame scheduler batch %s failed", index, batch);
+				}
+			}
+
+			this.batches.poll();
+
+			if (!batch.cancelled) {
+				batch.done = true;
+				this.batchesCompleted++;
+
+				if (batch.framesSpanned > this.peakFramesSpanned) {
+					this.peakFramesSpanned = batch.framesSpanned;
+				}
+
+				if (batch.completion != null) {
+					try {
+						batch.completion.run();
+					} catch (RuntimeException e) {
+						MWarn(e, "Completion of frame scheduler batch %s failed", batch);
+					}
+				}
+			}
+		}
+
+		return false;
+	}
+
+	private void reschedule() {
+		// Post at the next frame boundary so input and drawing get the rest of this one
+		long now = SystemClock.uptimeMillis();
+		this.handler.postAtTime(this.slice, now + FRAME_DURATION - (now % FRAME_DURATION));
+	}
+
+	protected String toStringExtra() {
+		return String.format("budget = %dms, slicesTotal = %d, batchesCompleted = %d, peakFramesSpanned = %d", this.getBudget(), this.slicesTotal, this.batchesCompleted, this.peakFramesSpanned);
+	}
+
+}
@@ -0,0 +1,273 @@
+package mocha.foundation.concurrent;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+/**
+ * Queue for deferrable work that runs on the main thread only while its
+ * looper is idle, such as warming caches or preparing views ahead of time.
+ * <p/>
+ * A single task runs per idle callback, highest priority first and in the
+ * order posted within a priority.  Tasks don't run while the queue is
+ * suspended, which is the case for as long as view animations are running,
+ * so idle work never lands between two animation frames.
+ */
+public final class IdleQueue extends ScheduledQueue {
+	private static IdleQueue instance;
+
+	private final Handler handler;
+	private final PriorityQueue<Entry> entries;
+	private final MessageQueue.IdleHandler idleHandler;
+	private final Runnable nudge;
+	private long sequence;
+	private int suspended;
+	private boolean registered;
+
+	private static class Entry implements Comparable<Entry> {
+		final Runnable runnable;
+		final Runnable task;
+		final int rank;
+		final long sequence;
+
+		Entry(Runnable runnable, Runnable task, Priority priority, long sequence) {
+			this.runnable = runnable;
+			this.task = task;
+			this.rank = rank(priority);
+			this.sequence = sequence;
+		}
+
+		public int compareTo(Entry another) {
+			if (this.rank != another.rank) {
+				return this.rank < another.rank ? -1 : 1;
+			} else {
+				return this.sequence < another.sequence ? -1 : (this.sequence == another.sequence ? 0 : 1);
+			}
+		}
+
+		private static int rank(Priority priority) {
+			switch (priority) {
+				case HIGH:
+					return 0;
+				case LOW:
+					return 2;
+				case DEFAULT:
+				default:
+					return 1;
+			}
+		}
+	}
+
+	/**
+	 * Get the idle queue for the main thread
+	 *
+	 * @return Idle queue
+	 */
+	public synchronized static IdleQueue get() {
+		if (instance == null) {
+			instance = new IdleQueue();
+		}
+
+		return instance;
+	}
+
+	private IdleQueue() {
+		Looper looper = Looper.getMainLooper();
+
+		if (looper == null) {
+			throw new RuntimeException("Could not find main looper.");
+		}
+
+		this.handler = new Handler(looper);
+		this.entries = new PriorityQueue<Entry>();
+
+		this.idleHandler = new MessageQueue.IdleHandler() {
+			public boolean queueIdle() {
+				return runNext();
+			}
+		};
+
+		// Idle handlers only fire once per idle period, so an empty message
+		// is posted to start a new one while tasks remain.
+		this.nudge = new Runnable() {
+			public void run() {
+
+			}
+		};
+	}
+
+	/**
+	 * Post a task with default priority
+	 *
+	 * @inheritDoc
+	 */
+	public void post(Runnable runnable) {
+		this.post(Priority.DEFAULT, runnable);
+	}
+
+	/**
+	 * Post a task to run the next time the main looper is idle
+	 *
+	 * @param priority tasks with a higher priority run first, null is treated as default
+	 * @param runnable task to be executed
+	 */
+	public void post(Priority priority, Runnable runnable) {
+		if (priority == null) priority = Priority.DEFAULT;
+		Runnable task = this.track(runnable);
+		boolean register;
+
+		synchronized (this) {
+			this.entries.offer(new Entry(runnable, task, priority, this.sequence++));
+			register = !this.registered;
+			this.registered = true;
+		}
+
+		if (register) {
+			// Idle handlers can only be added from the looper's own thread
+			this.handler.post(new Runnable() {
+				public void run() {
+					Looper.myQueue().addIdleHandler(idleHandler);
+				}
+			});
+		}
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public void post(long delayInMillis, final Runnable runnable) {
+		if (delayInMillis <= 0) {
+			this.post(runnable);
+		} else {
+			this.handler.postDelayed(new Runnable() {
+				public void run() {
+					post(runnable);
+				}
+			}, delayInMillis);
+		}
+	}
+
+	/**
+	 * Cancel a task that hasn't run yet
+	 *
+	 * @param runnable task to cancel
+	 *
+	 * @return true if the task was removed before running
+	 */
+	public synchronized boolean cancel(Runnable runnable) {
+		Iterator<Entry> iterator = this.entries.iterator();
+
+		while (iterator.hasNext()) {
+			Entry entry = iterator.next();
+
+			if (entry.runnable == runnable) {
+				iterator.remove();
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	void remove(Runnable runnable) {
+		this.cancel(runnable);
+	}
+
+	/**
+	 * Idle tasks run on the main thread, so waiting on this queue from the
+	 * main thread runs the task inline rather than blocking the looper it
+	 * would need to go idle.
+	 *
+	 * @return true if called from the main thread
+	 */
+	public boolean isCurrent() {
+		return MainQueue.isMainThread();
+	}
+
+	/**
+	 * Stop running tasks until {@link #resume()} is called.  Calls nest, so
+	 * every suspend must be balanced with a resume.
+	 */
+	public synchronized void suspend() {
+		this.suspended++;
+	}
+
+	/**
+	 * Balance a previous call to {@link #suspend()}
+	 */
+	public void resume() {
+		boolean nudge;
+
+		synchronized (this) {
+			if (this.suspended == 0) {
+				throw new RuntimeException("IdleQueue resumed more times than it was suspended.");
+			}
+
+			nudge = --this.suspended == 0 && !this.entries.isEmpty();
+		}
+
+		if (nudge) {
+			this.handler.post(this.nudge);
+		}
+	}
+
+	/**
+	 * @return true if the queue is currently suspended
+	 */
+	public synchronized boolean isSuspended() {
+		return this.suspended > 0;
+	}
+
+	private boolean runNext() {
+		Entry entry;
+
+		synchronized (this) {
+			if (this.suspended > 0) {
+				// Keep the handler, resume() will start a new idle period
+				return true;
+			}
+
+			entry = this.entries.poll();
+
+			if (entry == null) {
+				this.registered = false;
+				return false;
+			}
+		}
+
+		Frame parent = this.enter();
+
+		try {
+			entry.task.run();
+		} catch (Throwable t) {
+			MWarn(t, "Error executing on queue " + this.getLabel());
+
+			if (this.getExceptionHandler() != null) {
+				this.getExceptionHandler().handleException(t, this);
+			}
+		} finally {
+			exit(parent);
+		}
+
+		synchronized (this) {
+			if (this.entries.isEmpty()) {
+				this.registered = false;
+				return false;
+			}
+		}
+
+		this.handler.post(this.nudge);
+		return true;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public String getLabel() {
+		return "mocha.foundation.queue.idle";
+	}
+
+}
@@ -2,12 +2,12 @@ package mocha.foundation.concurrent;
 
 import android.os.Handler;
 import android.os.Looper;
-
-import java.util.concurrent.Semaphore;
+import android.os.SystemClock;
+import mocha.foundation.IndexedBlock;
 
 public class MainQueue extends ScheduledQueue {
 	private Handler handler;
-	private Semaphore lock = new Semaphore(1);
+	private FrameScheduler frameScheduler;
 	private static MainQueue instance;
 
 	/**
@@ -39,7 +39,14 @@ public class MainQueue extends ScheduledQueue {
 	 * @inheritDoc
 	 */
 	public void post(Runnable runnable) {
-		this.handler.post(runnable);
+		Runnable task = this.track(runnable);
+
+		if (task == runnable) {
+			this.handler.post(runnable);
+		} else {
+			// Tokened with the original runnable so remove() can still find it
+			this.handler.postAtTime(task, runnable, SystemClock.uptimeMillis());
+		}
 	}
 
 	/**
@@ -49,23 +56,71 @@ public class MainQueue extends ScheduledQueue {
 		this.handler.postDelayed(runnable, delayInMillis);
 	}
 
+	void remove(Runnable runnable) {
+		this.handler.removeCallbacks(runnable);
+		this.handler.removeCallbacksAndMessages(runnable);
+	}
+
+	/**
+	 * Check whether the current thread is the main thread
+	 *
+	 * @return true if called from the main thread
+	 */
+	static boolean isMainThread() {
+		return Looper.myLooper() == Looper.getMainLooper();
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public boolean isCurrent() {
+		return Looper.myLooper() == this.handler.getLooper();
+	}
+
 	/**
 	 * @inheritDoc
 	 */
-	public void wait(final Runnable runnable) {
-		if (Looper.myLooper() == this.handler.getLooper()) {
+	public void wait(Runnable runnable) {
+		if (this.isCurrent()) {
 			runnable.run();
 		} else {
-			this.lock.acquireUninterruptibly();
-			this.handler.post(new Runnable() {
-				public void run() {
-					runnable.run();
-					lock.release();
+			long start = System.nanoTime();
+
+			try {
+				super.wait(runnable);
+			} finally {
+				if (QueueMetrics.isEnabled()) {
+					this.getMetrics().stalled(System.nanoTime() - start);
 				}
-			});
-			this.lock.acquireUninterruptibly();
-			this.lock.release();
+			}
+		}
+	}
+
+	/**
+	 * Runs the iterations in order on the main thread, waiting for them
+	 * to finish if called from another thread.
+	 */
+	public void apply(final int iterations, final IndexedBlock block) {
+		this.wait(new Runnable() {
+			public void run() {
+				MainQueue.super.apply(iterations, block);
+			}
+		});
+	}
+
+	/**
+	 * Get the frame scheduler for the main queue, used to spread large
+	 * batches of small UI updates across frames instead of running them
+	 * all in a single message.
+	 *
+	 * @return Frame scheduler
+	 */
+	public synchronized FrameScheduler getFrameScheduler() {
+		if (this.frameScheduler == null) {
+			this.frameScheduler = new FrameScheduler(this.handler);
 		}
+
+		return this.frameScheduler;
 	}
 
 	/**
@@ -0,0 +1,40 @@
+package mocha.foundation.concurrent;
+
+/**
+ * What a bounded queue does with a task posted while it's at capacity
+ *
+ * @see SerialQueue#setCapacity(int, OverflowPolicy)
+ * @see ConcurrentQueue#setCapacity(int, OverflowPolicy)
+ */
+public enum OverflowPolicy {
+	/**
+	 * Block the posting thread until there's room
+	 */
+	BLOCK,
+
+	/**
+	 * Run the task immediately on the posting thread
+	 */
+	CALLER_RUNS,
+
+	/**
+	 * Discard the oldest task that hasn't started yet to make room
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * Discard the task being posted
+	 */
+	DROP_NEWEST,
+
+	/**
+	 * Replace a pending task posted with the same key, keeping its place in
+	 * the queue.  This applies whether or not the queue is full.  If the queue
+	 * is full and no pending task has the same key, the task being posted is
+	 * discarded.
+	 *
+	 * @see SerialQueue#postCoalesced(Object, Runnable)
+	 * @see ConcurrentQueue#postCoalesced(Object, Runnable)
+	 */
+	COALESCE
+}
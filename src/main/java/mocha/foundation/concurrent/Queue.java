@@ -1,10 +1,41 @@
 package mocha.foundation.concurrent;
 
+import mocha.foundation.IndexedBlock;
 import mocha.foundation.MObject;
+import mocha.foundation.ResultBlock;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
 public abstract class Queue extends MObject {
+	private static final ThreadLocal<Frame> frames = new ThreadLocal<Frame>();
 	private static ExceptionHandler defaultExceptionHandler;
 	private ExceptionHandler exceptionHandler;
+	private QueueMetrics metrics;
+	private volatile ConcurrentHashMap<Object, Object> specifics;
+
+	/**
+	 * A queue running a task on the current thread, linked to the queue
+	 * it's nested in.  A serial queue's tasks run nested in its target's.
+	 */
+	static final class Frame {
+		final Queue queue;
+		final Frame parent;
+
+		Frame(Queue queue, Frame parent) {
+			this.queue = queue;
+			this.parent = parent;
+		}
+	}
+
+	/**
+	 * Marks tasks a queue posts to run its own machinery, such as a serial
+	 * queue's drain, so they aren't counted as tasks in the target's metrics.
+	 */
+	interface InternalTask extends Runnable {
+
+	}
 
 	protected Queue() {
 		this.exceptionHandler = defaultExceptionHandler;
@@ -30,7 +61,7 @@ public abstract class Queue extends MObject {
 	 *
 	 * @see SerialQueue#getGlobalQueue(Priority)
 	 */
-	public static Queue serial(Priority priority) {
+	public static ScheduledQueue serial(Priority priority) {
 		return SerialQueue.getGlobalQueue(priority);
 	}
 
@@ -43,10 +74,48 @@ public abstract class Queue extends MObject {
 	 *
 	 * @see ConcurrentQueue#getGlobalQueue(Priority)
 	 */
-	public static Queue concurrent(Priority priority) {
+	public static ScheduledQueue concurrent(Priority priority) {
 		return ConcurrentQueue.getGlobalQueue(priority);
 	}
 
+	/**
+	 * Get the queue running the current task
+	 *
+	 * @return Current queue, the main queue on the main thread outside of
+	 * other queues, or null if not called from a queue
+	 */
+	public static Queue current() {
+		Frame frame = frames.get();
+
+		if (frame != null) {
+			return frame.queue;
+		} else if (MainQueue.isMainThread()) {
+			return MainQueue.get();
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Get a value set with {@link #setSpecific(Object, Object)} on the current
+	 * queue, or on the queues it's running on if it wasn't set there.
+	 *
+	 * @param key key to look up
+	 *
+	 * @return Value for the key, or null if not found
+	 */
+	public static Object getCurrentSpecific(Object key) {
+		for (Frame frame = frames.get(); frame != null; frame = frame.parent) {
+			Object value = frame.queue.getSpecific(key);
+
+			if (value != null) {
+				return value;
+			}
+		}
+
+		return MainQueue.isMainThread() ? MainQueue.get().getSpecific(key) : null;
+	}
+
 	/**
 	 * Post a task to be executed on this queue
 	 *
@@ -54,6 +123,200 @@ public abstract class Queue extends MObject {
 	 */
 	abstract public void post(Runnable runnable);
 
+	/**
+	 * Post a task whose delay has elapsed.  Called from the shared timer
+	 * thread, so it must never block or run the task on the calling thread.
+	 *
+	 * @param runnable task to be executed
+	 *
+	 * @see TimerWheel
+	 */
+	void postExpired(Runnable runnable) {
+		this.post(runnable);
+	}
+
+	/**
+	 * Post a task to be executed on this queue and wait for it to finish.
+	 * <p/>
+	 * If the current thread is already running a task on this queue, directly
+	 * or through a queue that targets it, the task runs inline instead of
+	 * deadlocking.  Anything thrown by the task is rethrown to the caller.
+	 * Waiting from a task on a global queue doesn't hold up the other global
+	 * queue tasks, a spare thread takes over while it waits.
+	 *
+	 * @param runnable task to be executed
+	 */
+	public void wait(final Runnable runnable) {
+		if (this.isCurrent()) {
+			runnable.run();
+			return;
+		}
+
+		final CountDownLatch latch = new CountDownLatch(1);
+		final Throwable[] error = new Throwable[1];
+
+		this.post(new Runnable() {
+			public void run() {
+				try {
+					runnable.run();
+				} catch (Throwable t) {
+					error[0] = t;
+				} finally {
+					latch.countDown();
+				}
+			}
+		});
+
+		boolean interrupted = false;
+		Scheduler scheduler = Scheduler.blocking();
+
+		try {
+			while (true) {
+				try {
+					latch.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			Scheduler.unblocked(scheduler);
+		}
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+		if (error[0] instanceof RuntimeException) {
+			throw (RuntimeException) error[0];
+		} else if (error[0] instanceof Error) {
+			throw (Error) error[0];
+		} else if (error[0] != null) {
+			throw new RuntimeException(error[0]);
+		}
+	}
+
+	/**
+	 * Execute a block on this queue and wait for its result
+	 *
+	 * @param block block to be executed
+	 * @param <T>   result type
+	 *
+	 * @return Result of the block
+	 *
+	 * @see #wait(Runnable)
+	 */
+	public <T> T sync(final ResultBlock<T> block) {
+		final AtomicReference<T> result = new AtomicReference<T>();
+
+		this.wait(new Runnable() {
+			public void run() {
+				result.set(block.block());
+			}
+		});
+
+		return result.get();
+	}
+
+	/**
+	 * Check whether the current thread is running a task on this queue,
+	 * directly or through a queue targeting it
+	 *
+	 * @return true if called from this queue
+	 */
+	public boolean isCurrent() {
+		for (Frame frame = frames.get(); frame != null; frame = frame.parent) {
+			if (frame.queue == this) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Associate a value with this queue, readable from its tasks through
+	 * {@link #getCurrentSpecific(Object)}
+	 *
+	 * @param key   key, compared with equals()
+	 * @param value value, or null to remove the key
+	 */
+	public void setSpecific(Object key, Object value) {
+		if (value == null) {
+			if (this.specifics != null) {
+				this.specifics.remove(key);
+			}
+		} else {
+			if (this.specifics == null) {
+				synchronized (this) {
+					if (this.specifics == null) {
+						this.specifics = new ConcurrentHashMap<Object, Object>();
+					}
+				}
+			}
+
+			this.specifics.put(key, value);
+		}
+	}
+
+	/**
+	 * Get a value associated with this queue
+	 *
+	 * @param key key
+	 *
+	 * @return Value for the key, or null if not set
+	 */
+	public Object getSpecific(Object key) {
+		ConcurrentHashMap<Object, Object> specifics = this.specifics;
+		return specifics == null ? null : specifics.get(key);
+	}
+
+	/**
+	 * Submit a block to be executed on this queue
+	 * <p/>
+	 * Unlike {@link #post(Runnable)}, the returned work item can be
+	 * cancelled while it's still waiting to run, and its result can be
+	 * handed to a continuation on another queue.
+	 *
+	 * @param block block to be executed
+	 * @param <T>   result type
+	 *
+	 * @return Work item for the block
+	 */
+	public <T> WorkItem<T> submit(ResultBlock<T> block) {
+		WorkItem<T> workItem = new WorkItem<T>(this, block);
+		this.post(workItem);
+		return workItem;
+	}
+
+	/**
+	 * Remove a task that hasn't started yet, if this queue supports it.
+	 * Queues that don't simply skip cancelled work items when they're reached.
+	 *
+	 * @param runnable task to remove
+	 */
+	void remove(Runnable runnable) {
+
+	}
+
+	/**
+	 * Execute a block once for every index in [0, iterations) and wait
+	 * for all of them to finish.
+	 * <p/>
+	 * Serial queues run the iterations in order, concurrent queues split
+	 * them across their threads.  The calling thread takes part in the
+	 * work, so it's safe to call this from a task already running on the
+	 * queue.
+	 *
+	 * @param iterations number of iterations
+	 * @param block      block to execute for each index
+	 */
+	public void apply(int iterations, IndexedBlock block) {
+		for (int index = 0; index < iterations; index++) {
+			block.block(index);
+		}
+	}
+
 	/**
 	 * Get the label of this queue
 	 *
@@ -61,6 +324,64 @@ public abstract class Queue extends MObject {
 	 */
 	abstract public String getLabel();
 
+	/**
+	 * Get the runtime metrics for this queue.
+	 * Queues with the same label share their metrics, unlabeled queues
+	 * each get their own.  Nothing is recorded unless metrics are enabled.
+	 *
+	 * @see QueueMetrics#setEnabled(boolean)
+	 *
+	 * @return Queue metrics
+	 */
+	public QueueMetrics getMetrics() {
+		if (this.metrics == null) {
+			String label = this.getLabel();
+			this.metrics = label == null ? QueueMetrics.unlabeled() : QueueMetrics.forLabel(label);
+		}
+
+		return this.metrics;
+	}
+
+	/**
+	 * Wrap a task being posted so its metrics are recorded, if enabled.
+	 * Internal tasks are never wrapped.
+	 *
+	 * @param runnable task being posted
+	 *
+	 * @return Task to post in its place
+	 */
+	Runnable track(Runnable runnable) {
+		if (!QueueMetrics.isEnabled() || runnable instanceof InternalTask) {
+			return runnable;
+		}
+
+		return this.getMetrics().track(runnable);
+	}
+
+	/**
+	 * Mark this queue as running a task on the current thread
+	 *
+	 * @return Frame to pass to {@link #exit(Frame)} once the task finishes
+	 */
+	final Frame enter() {
+		Frame parent = frames.get();
+		frames.set(new Frame(this, parent));
+		return parent;
+	}
+
+	/**
+	 * Restore the frame returned by {@link #enter()}
+	 *
+	 * @param parent frame to restore
+	 */
+	static void exit(Frame parent) {
+		if (parent == null) {
+			frames.remove();
+		} else {
+			frames.set(parent);
+		}
+	}
+
 	/**
 	 * Set the default exception handler to be assigned to any new Queue created.
 	 *
@@ -0,0 +1,171 @@
+package mocha.foundation.concurrent;
+
+import mocha.foundation.MObject;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks a set of tasks, possibly spread across several queues, so work can
+ * be scheduled or waited on once all of them have finished.
+ *
+ * @example <pre> QueueGroup group = new QueueGroup();
+ *
+ * for (final Image image : images) {
+ * 	group.post(Queue.concurrent(Priority.DEFAULT), new Runnable() {
+ * 		public void run() {
+ * 			image.prefetch();
+ * 		}
+ * 	});
+ * }
+ *
+ * group.notify(Queue.main(), new Runnable() {
+ * 	public void run() {
+ * 		tableView.reloadData();
+ * 	}
+ * });</pre>
+ */
+public class QueueGroup extends MObject {
+	private final AtomicInteger count = new AtomicInteger();
+	private final ConcurrentLinkedQueue<Notification> notifications = new ConcurrentLinkedQueue<Notification>();
+	private final Object lock = new Object();
+	private volatile int waiters;
+
+	private static class Notification {
+		final Queue queue;
+		final Runnable runnable;
+
+		Notification(Queue queue, Runnable runnable) {
+			this.queue = queue;
+			this.runnable = runnable;
+		}
+	}
+
+	/**
+	 * Post a task to a queue as part of this group
+	 *
+	 * @param queue    queue to execute the task on
+	 * @param runnable task to be executed
+	 */
+	public void post(Queue queue, final Runnable runnable) {
+		this.enter();
+
+		queue.post(new Runnable() {
+			public void run() {
+				try {
+					runnable.run();
+				} finally {
+					leave();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Explicitly mark that a task has joined the group.  Useful for work that
+	 * isn't a single task, such as an asynchronous request with a callback.
+	 * Every call must be balanced by a call to {@link #leave()}.
+	 */
+	public void enter() {
+		this.count.incrementAndGet();
+	}
+
+	/**
+	 * Mark that a task that called {@link #enter()} has finished.
+	 */
+	public void leave() {
+		int count = this.count.decrementAndGet();
+
+		if (count < 0) {
+			this.count.incrementAndGet();
+			throw new RuntimeException("Unbalanced call to QueueGroup.leave()");
+		} else if (count == 0) {
+			this.fireNotifications();
+
+			if (this.waiters > 0) {
+				synchronized (this.lock) {
+					this.lock.notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Post a task to a queue once every task in the group has finished.
+	 * If the group is already empty, the task is posted immediately.
+	 * <p/>
+	 * This does not block, nor does it hold up a thread while waiting.
+	 *
+	 * @param queue    queue to execute the task on
+	 * @param runnable task to be executed
+	 */
+	public void notify(Queue queue, Runnable runnable) {
+		this.notifications.offer(new Notification(queue, runnable));
+
+		if (this.count.get() == 0) {
+			this.fireNotifications();
+		}
+	}
+
+	/**
+	 * Block the current thread until every task in the group has finished
+	 *
+	 * @param timeout maximum time to wait
+	 * @param unit    unit of the timeout
+	 *
+	 * @return true if the group finished, false if the timeout elapsed first
+	 */
+	public boolean wait(long timeout, TimeUnit unit) {
+		if (this.count.get() == 0) {
+			return true;
+		}
+
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		boolean interrupted = false;
+
+		Scheduler scheduler = Scheduler.blocking();
+
+		synchronized (this.lock) {
+			this.waiters++;
+
+			try {
+				while (this.count.get() > 0) {
+					long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+
+					if (remaining <= 0) {
+						return false;
+					}
+
+					try {
+						this.lock.wait(remaining);
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+
+				return true;
+			} finally {
+				this.waiters--;
+				Scheduler.unblocked(scheduler);
+
+				if (interrupted) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	private void fireNotifications() {
+		Notification notification;
+
+		while ((notification = this.notifications.poll()) != null) {
+			notification.queue.post(notification.runnable);
+		}
+	}
+
+	protected String toStringExtra() {
+		return "count = " + this.count.get();
+	}
+
+}
@@ -0,0 +1,360 @@
+package mocha.foundation.concurrent;
+
+import mocha.foundation.MObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Runtime metrics for all queues sharing a label.
+ * <p/>
+ * Records how many tasks were posted, started and completed, how long they
+ * waited before starting and how long they ran, how many tasks ran at once, and for
+ * the main queue how long other threads were stalled in
+ * {@link MainQueue#wait(Runnable)}.  Counters are striped across threads and
+ * updated without locks.
+ * <p/>
+ * Recording never takes a lock and is cheap enough to leave on in the field,
+ * at the cost of one small wrapper allocation, two clock reads and a handful
+ * of uncontended atomic updates per task.  It's off by default so posting
+ * stays as cheap as possible for apps that don't collect metrics, and is
+ * turned on with {@link #setEnabled(boolean)}.  Metrics are kept per label for the life of the process,
+ * up to {@link #MAXIMUM_LABELS} labels, after which further labels share a
+ * single entry labeled {@link #OTHER_LABEL}.  Queues without a label each
+ * get their own metrics, which aren't kept or included in snapshots.
+ *
+ * @see Queue#getMetrics()
+ * @see #snapshots()
+ */
+public final class QueueMetrics {
+	public static final int MAXIMUM_LABELS = 256;
+	public static final String OTHER_LABEL = "(other)";
+
+	private static final int STRIPES = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1) << 1);
+	private static final int PADDING = 8; // longs per cache line
+	private static final ConcurrentHashMap<String, QueueMetrics> metrics = new ConcurrentHashMap<String, QueueMetrics>();
+	private static volatile boolean enabled;
+
+	private final String label;
+	private final Counter posted = new Counter();
+	private final Counter started = new Counter();
+	private final Counter completed = new Counter();
+	private final Histogram waitTime = new Histogram();
+	private final Histogram runTime = new Histogram();
+	private final Histogram stallTime = new Histogram();
+	private final AtomicInteger concurrentTasks = new AtomicInteger();
+	private final AtomicInteger peakConcurrentTasks = new AtomicInteger();
+
+	// Used to derive throughput between snapshots
+	private long lastSnapshotTime = System.nanoTime();
+	private long lastSnapshotCompleted;
+
+	/**
+	 * Point in time copy of a queue label's metrics.
+	 * Times are in microseconds.
+	 */
+	public static final class Snapshot extends MObject {
+		public final String label;
+
+		/** Tasks posted */
+		public final long posted;
+
+		/** Tasks that have started */
+		public final long started;
+
+		/** Tasks that have finished */
+		public final long completed;
+
+		/** Tasks posted but not yet started */
+		public final long pending;
+
+		/** Tasks running right now.  Queues share their threads, so this counts tasks, not threads. */
+		public final int concurrentTasks;
+
+		/** Most tasks that have run at the same time */
+		public final int peakConcurrentTasks;
+
+		/** Tasks completed per second since the previous snapshot */
+		public final double throughput;
+
+		public final long waitTimeMean;
+		public final long waitTime50;
+		public final long waitTime99;
+
+		public final long runTimeMean;
+		public final long runTime50;
+		public final long runTime99;
+
+		/** Number of times a thread blocked waiting on this queue */
+		public final long stalls;
+		public final long stallTimeMean;
+		public final long stallTime99;
+
+		private Snapshot(QueueMetrics metrics, double throughput) {
+			this.label = metrics.label;
+			this.posted = metrics.posted.sum();
+			this.started = metrics.started.sum();
+			this.completed = metrics.completed.sum();
+			this.pending = Math.max(0, this.posted - this.started);
+			this.concurrentTasks = metrics.concurrentTasks.get();
+			this.peakConcurrentTasks = metrics.peakConcurrentTasks.get();
+			this.throughput = throughput;
+
+			long[] waitTime = metrics.waitTime.counts();
+			this.waitTimeMean = metrics.waitTime.mean();
+			this.waitTime50 = Histogram.percentile(waitTime, 0.5);
+			this.waitTime99 = Histogram.percentile(waitTime, 0.99);
+
+			long[] runTime = metrics.runTime.counts();
+			this.runTimeMean = metrics.runTime.mean();
+			this.runTime50 = Histogram.percentile(runTime, 0.5);
+			this.runTime99 = Histogram.percentile(runTime, 0.99);
+
+			long[] stallTime = metrics.stallTime.counts();
+			this.stalls = metrics.stallTime.count.sum();
+			this.stallTimeMean = metrics.stallTime.mean();
+			this.stallTime99 = Histogram.percentile(stallTime, 0.99);
+		}
+
+		protected String toStringExtra() {
+			return String.format("label = %s; posted = %d; completed = %d; pending = %d; concurrentTasks = %d; peakConcurrentTasks = %d; throughput = %.1f/s; wait = %d/%d/%dus; run = %d/%d/%dus; stalls = %d (%d/%dus)",
+					this.label, this.posted, this.completed, this.pending, this.concurrentTasks, this.peakConcurrentTasks, this.throughput,
+					this.waitTimeMean, this.waitTime50, this.waitTime99, this.runTimeMean, this.runTime50, this.runTime99,
+					this.stalls, this.stallTimeMean, this.stallTime99);
+		}
+	}
+
+	static QueueMetrics forLabel(String label) {
+		QueueMetrics queueMetrics = metrics.get(label);
+
+		if (queueMetrics == null) {
+			if (metrics.size() >= MAXIMUM_LABELS) {
+				label = OTHER_LABEL;
+			}
+
+			QueueMetrics existing = metrics.putIfAbsent(label, queueMetrics = new QueueMetrics(label));
+
+			if (existing != null) {
+				queueMetrics = existing;
+			}
+		}
+
+		return queueMetrics;
+	}
+
+	static QueueMetrics unlabeled() {
+		return new QueueMetrics(null);
+	}
+
+	/**
+	 * Take a snapshot of the metrics for every queue label
+	 *
+	 * @return Snapshots, one per label
+	 */
+	public static List<Snapshot> snapshots() {
+		List<Snapshot> snapshots = new ArrayList<Snapshot>(metrics.size());
+
+		for (QueueMetrics queueMetrics : metrics.values()) {
+			snapshots.add(queueMetrics.snapshot());
+		}
+
+		return snapshots;
+	}
+
+	/**
+	 * Enable or disable recording for all queues.  Disabled by default.
+	 *
+	 * @param enabled Whether metrics should be recorded
+	 */
+	public static void setEnabled(boolean enabled) {
+		QueueMetrics.enabled = enabled;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	private QueueMetrics(String label) {
+		this.label = label;
+	}
+
+	public String getLabel() {
+		return this.label;
+	}
+
+	/**
+	 * Take a snapshot of these metrics
+	 *
+	 * @return Snapshot
+	 */
+	public Snapshot snapshot() {
+		double throughput;
+
+		synchronized (this) {
+			long now = System.nanoTime();
+			long completed = this.completed.sum();
+			long elapsed = now - this.lastSnapshotTime;
+			throughput = elapsed > 0 ? (completed - this.lastSnapshotCompleted) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed : 0.0;
+			this.lastSnapshotTime = now;
+			this.lastSnapshotCompleted = completed;
+		}
+
+		return new Snapshot(this, throughput);
+	}
+
+	/**
+	 * Count a posted task and wrap it to record its wait and run times
+	 *
+	 * @param runnable task being posted
+	 *
+	 * @return Task to post in its place
+	 */
+	Runnable track(Runnable runnable) {
+		this.posted.increment();
+		return new Task(this, runnable);
+	}
+
+	private void taskStarted(long waitTime) {
+		this.started.increment();
+		this.waitTime.record(waitTime);
+
+		int concurrentTasks = this.concurrentTasks.incrementAndGet();
+		int peakConcurrentTasks;
+
+		while (concurrentTasks > (peakConcurrentTasks = this.peakConcurrentTasks.get())) {
+			if (this.peakConcurrentTasks.compareAndSet(peakConcurrentTasks, concurrentTasks)) {
+				break;
+			}
+		}
+	}
+
+	private void taskFinished(long runTime) {
+		this.concurrentTasks.decrementAndGet();
+		this.completed.increment();
+		this.runTime.record(runTime);
+	}
+
+	void stalled(long stallTime) {
+		this.stallTime.record(stallTime);
+	}
+
+	private static class Task implements Runnable {
+		private final QueueMetrics metrics;
+		private final Runnable runnable;
+		private final long postedAt = System.nanoTime();
+
+		Task(QueueMetrics metrics, Runnable runnable) {
+			this.metrics = metrics;
+			this.runnable = runnable;
+		}
+
+		public void run() {
+			long start = System.nanoTime();
+			this.metrics.taskStarted(start - this.postedAt);
+
+			try {
+				this.runnable.run();
+			} finally {
+				this.metrics.taskFinished(System.nanoTime() - start);
+			}
+		}
+	}
+
+	private static int stripe() {
+		return (int) Thread.currentThread().getId() & (STRIPES - 1);
+	}
+
+	/**
+	 * Counter split into cache line padded cells, one picked per thread,
+	 * so concurrent increments rarely touch the same cell.
+	 */
+	private static class Counter {
+		private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+		void increment() {
+			this.cells.getAndIncrement(stripe() * PADDING);
+		}
+
+		void add(long value) {
+			this.cells.getAndAdd(stripe() * PADDING, value);
+		}
+
+		long sum() {
+			long sum = 0;
+
+			for (int stripe = 0; stripe < STRIPES; stripe++) {
+				sum += this.cells.get(stripe * PADDING);
+			}
+
+			return sum;
+		}
+	}
+
+	/**
+	 * Striped histogram with power of two microsecond buckets
+	 */
+	private static class Histogram {
+		private static final int BUCKETS = 32;
+
+		private final AtomicLongArray buckets = new AtomicLongArray(STRIPES * BUCKETS);
+		private final Counter count = new Counter();
+		private final Counter total = new Counter();
+
+		void record(long nanos) {
+			long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos));
+			int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+
+			this.buckets.getAndIncrement(stripe() * BUCKETS + bucket);
+			this.count.increment();
+			this.total.add(micros);
+		}
+
+		long[] counts() {
+			long[] counts = new long[BUCKETS];
+
+			for (int index = 0; index < STRIPES * BUCKETS; index++) {
+				counts[index % BUCKETS] += this.buckets.get(index);
+			}
+
+			return counts;
+		}
+
+		long mean() {
+			long count = this.count.sum();
+			return count > 0 ? this.total.sum() / count : 0;
+		}
+
+		/**
+		 * @return Upper bound in microseconds of the bucket containing the percentile
+		 */
+		static long percentile(long[] counts, double percentile) {
+			long total = 0;
+
+			for (long count : counts) {
+				total += count;
+			}
+
+			if (total == 0) {
+				return 0;
+			}
+
+			long target = (long) Math.ceil(total * percentile);
+			long seen = 0;
+
+			for (int bucket = 0; bucket < counts.length; bucket++) {
+				seen += counts[bucket];
+
+				if (seen >= target) {
+					return bucket == 0 ? 0 : (1L << bucket) - 1;
+				}
+			}
+
+			return (1L << (counts.length - 1)) - 1;
+		}
+	}
+
+}
@@ -0,0 +1,178 @@
+package mocha.foundation.concurrent;
+
+import mocha.foundation.MObject;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Executor that scales from corePoolSize to maximumPoolSize before queueing,
+ * like {@link ScalingThreadPoolExecutor}, without taking a lock on submission.
+ * <p/>
+ * Idle workers park themselves on a lock-free list. Each submission hands the
+ * task to one of them, or starts a new worker if none are idle and the pool
+ * hasn't reached maximumPoolSize. Only when every worker is busy at the
+ * maximum does the task wait in the queue for the next free worker. Workers
+ * above corePoolSize exit after being idle for keepAliveTime.
+ */
+public class ScalingExecutor implements Executor {
+	private final int corePoolSize;
+	private final int maximumPoolSize;
+	private final long keepAliveNanos;
+	private final ThreadFactory threadFactory;
+
+	private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+	private final ConcurrentLinkedQueue<Worker> idleWorkers = new ConcurrentLinkedQueue<Worker>();
+	private final AtomicInteger poolSize = new AtomicInteger();
+
+	public ScalingExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, ThreadFactory threadFactory) {
+		if (corePoolSize < 0 || maximumPoolSize <= 0 || maximumPoolSize < corePoolSize || keepAliveTime < 0) {
+			throw new IllegalArgumentException();
+		}
+
+		this.corePoolSize = corePoolSize;
+		this.maximumPoolSize = maximumPoolSize;
+		this.keepAliveNanos = unit.toNanos(keepAliveTime);
+		this.threadFactory = threadFactory;
+	}
+
+	@SuppressWarnings("NullableProblems")
+	public void execute(Runnable runnable) {
+		if (runnable == null) {
+			throw new NullPointerException();
+		}
+
+		this.tasks.offer(runnable);
+
+		Worker worker;
+
+		while ((worker = this.idleWorkers.poll()) != null) {
+			if (worker.wake()) {
+				return;
+			}
+		}
+
+		this.addWorkerIfNeeded();
+	}
+
+	/**
+	 * @return Number of threads currently in the pool
+	 */
+	public int getPoolSize() {
+		return this.poolSize.get();
+	}
+
+	private void addWorkerIfNeeded() {
+		int size;
+
+		do {
+			size = this.poolSize.get();
+
+			if (size >= this.maximumPoolSize) {
+				return;
+			}
+		} while (!this.poolSize.compareAndSet(size, size + 1));
+
+		Worker worker = new Worker();
+		Thread thread = this.threadFactory.newThread(worker);
+
+		if (thread == null) {
+			this.poolSize.decrementAndGet();
+		} else {
+			thread.start();
+		}
+	}
+
+	/**
+	 * Called by a worker that timed out waiting for work.
+	 *
+	 * @return true if the worker should exit
+	 */
+	private boolean retire() {
+		int size;
+
+		do {
+			size = this.poolSize.get();
+
+			if (size <= this.corePoolSize) {
+				return false;
+			}
+		} while (!this.poolSize.compareAndSet(size, size - 1));
+
+		// A task may have been queued after our last check by a producer that
+		// still counted us, in which case no worker was started for it.
+		if (!this.tasks.isEmpty()) {
+			this.addWorkerIfNeeded();
+		}
+
+		return true;
+	}
+
+	private class Worker implements Runnable {
+		private final AtomicBoolean idle = new AtomicBoolean();
+		private volatile Thread thread;
+
+		boolean wake() {
+			if (this.idle.compareAndSet(true, false)) {
+				LockSupport.unpark(this.thread);
+				return true;
+			} else {
+				return false;
+			}
+		}
+
+		public void run() {
+			this.thread = Thread.currentThread();
+
+			while (true) {
+				Runnable task = tasks.poll();
+
+				if (task == null) {
+					// Advertise ourselves as idle before the final check, so
+					// a task posted after it is guaranteed to find us.
+					this.idle.set(true);
+					idleWorkers.offer(this);
+
+					if ((task = tasks.poll()) == null) {
+						if (poolSize.get() <= corePoolSize) {
+							while (this.idle.get()) {
+								LockSupport.park(this);
+							}
+
+							continue;
+						}
+
+						long deadline = System.nanoTime() + keepAliveNanos;
+						long remaining = keepAliveNanos;
+
+						while (this.idle.get() && remaining > 0) {
+							LockSupport.parkNanos(this, remaining);
+							remaining = deadline - System.nanoTime();
+						}
+
+						// Still idle means nobody woke us before the keep alive ran out
+						if (this.idle.compareAndSet(true, false) && retire()) {
+							return;
+						}
+
+						continue;
+					}
+
+					this.idle.set(false);
+				}
+
+				try {
+					task.run();
+				} catch (Throwable t) {
+					MObject.MWarn(t, "Error executing on " + this.thread.getName());
+				}
+			}
+		}
+	}
+
+}
@@ -8,6 +8,11 @@ package mocha.foundation.concurrent;
 
 import java.util.concurrent.*;
 
+/**
+ * @deprecated Use {@link ScalingExecutor}, which scales the same way without
+ * locking the pool on every submission.
+ */
+@Deprecated
 public class ScalingThreadPoolExecutor extends ThreadPoolExecutor {
 
 	public ScalingThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit) {
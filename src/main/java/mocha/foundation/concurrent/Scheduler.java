@@ -0,0 +1,321 @@
+package mocha.foundation.concurrent;
+
+import mocha.foundation.MObject;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Work-stealing scheduler shared by the global queues.
+ * <p/>
+ * A fixed set of workers, one per core, serves three lanes: HIGH, DEFAULT
+ * and LOW.  Tasks posted from outside the scheduler go into a shared queue
+ * for their lane, tasks posted from a worker go into that worker's own queue
+ * for the lane.  An idle worker looks for a task in each lane in turn,
+ * checking its own queue, then the shared queue, then stealing from other
+ * workers, so lower lanes are only served when every higher lane is empty.
+ * <p/>
+ * A worker that blocks in {@link Queue#wait(Runnable)} or
+ * {@link QueueGroup#wait(long, java.util.concurrent.TimeUnit)} is replaced by
+ * a spare worker for as long as it's blocked, so waits between queues can't
+ * tie up every worker.  Spares retire once the blocked worker resumes, or
+ * after sitting idle.  Other blocking, such as network or disk I/O, isn't
+ * compensated and belongs on a queue with its own threads.
+ */
+final class Scheduler {
+	private static final int LANE_COUNT = 3;
+	private static final int WORKER_COUNT = Math.max(2, Runtime.getRuntime().availableProcessors());
+	private static final int MAXIMUM_SPARE_COUNT = 64;
+	private static final long SPARE_KEEP_ALIVE = TimeUnit.SECONDS.toNanos(1);
+	private static Scheduler instance;
+
+	private final Worker[] workers;
+	private final ConcurrentLinkedQueue<Runnable>[] lanes;
+	private final Executor[] executors;
+	private final ConcurrentLinkedQueue<Worker> idleWorkers = new ConcurrentLinkedQueue<Worker>();
+	private final AtomicInteger blockedWorkers = new AtomicInteger();
+	private final AtomicInteger spareWorkers = new AtomicInteger();
+	private final AtomicInteger spareIndex = new AtomicInteger();
+
+	static synchronized Scheduler get() {
+		if (instance == null) {
+			instance = new Scheduler();
+		}
+
+		return instance;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Scheduler() {
+		this.lanes = new ConcurrentLinkedQueue[LANE_COUNT];
+		this.executors = new Executor[LANE_COUNT];
+
+		for (int lane = 0; lane < LANE_COUNT; lane++) {
+			this.lanes[lane] = new ConcurrentLinkedQueue<Runnable>();
+			this.executors[lane] = new Lane(lane);
+		}
+
+		this.workers = new Worker[WORKER_COUNT];
+
+		for (int index = 0; index < WORKER_COUNT; index++) {
+			this.workers[index] = new Worker(index, false);
+		}
+
+		for (Worker worker : this.workers) {
+			worker.start();
+		}
+	}
+
+	/**
+	 * Get the executor for a priority lane
+	 *
+	 * @param priority lane priority
+	 *
+	 * @return Executor that schedules tasks in the lane
+	 */
+	Executor getExecutor(Priority priority) {
+		return this.executors[getLane(priority)];
+	}
+
+	int getWorkerCount() {
+		return this.workers.length;
+	}
+
+	/**
+	 * Call before the current thread blocks waiting on other tasks.  If it's
+	 * one of the scheduler's workers, a spare is started to take its place.
+	 *
+	 * @return Token to pass to {@link #unblocked(Scheduler)}
+	 */
+	static Scheduler blocking() {
+		Thread thread = Thread.currentThread();
+
+		if (!(thread instanceof Worker)) {
+			return null;
+		}
+
+		Scheduler scheduler = ((Worker) thread).getScheduler();
+		scheduler.blockedWorkers.incrementAndGet();
+		scheduler.compensate();
+		return scheduler;
+	}
+
+	/**
+	 * Call once the wait that {@link #blocking()} was called for is over
+	 *
+	 * @param scheduler token returned by {@link #blocking()}
+	 */
+	static void unblocked(Scheduler scheduler) {
+		if (scheduler != null) {
+			scheduler.blockedWorkers.decrementAndGet();
+		}
+	}
+
+	private void compensate() {
+		int spares;
+
+		do {
+			spares = this.spareWorkers.get();
+
+			if (spares >= this.blockedWorkers.get() || spares >= MAXIMUM_SPARE_COUNT) {
+				return;
+			}
+		} while (!this.spareWorkers.compareAndSet(spares, spares + 1));
+
+		new Worker(this.spareIndex.getAndIncrement(), true).start();
+	}
+
+	/**
+	 * Retire a spare if there are more of them than blocked workers
+	 *
+	 * @return true if the calling spare should exit
+	 */
+	private boolean retireSpare() {
+		int spares;
+
+		do {
+			spares = this.spareWorkers.get();
+
+			if (spares <= this.blockedWorkers.get()) {
+				return false;
+			}
+		} while (!this.spareWorkers.compareAndSet(spares, spares - 1));
+
+		return true;
+	}
+
+	private static int getLane(Priority priority) {
+		if (priority == null) {
+			return 1;
+		}
+
+		switch (priority) {
+			case HIGH:
+				return 0;
+			case LOW:
+				return 2;
+			case DEFAULT:
+			default:
+				return 1;
+		}
+	}
+
+	private void execute(Runnable task, int lane) {
+		Thread thread = Thread.currentThread();
+
+		// Spares don't live long enough to keep tasks in local queues
+		if (thread instanceof Worker && ((Worker) thread).getScheduler() == this && !((Worker) thread).spare) {
+			((Worker) thread).local[lane].offer(task);
+		} else {
+			this.lanes[lane].offer(task);
+		}
+
+		Worker worker;
+
+		while ((worker = this.idleWorkers.poll()) != null) {
+			if (worker.wake()) {
+				break;
+			}
+		}
+	}
+
+	private class Lane implements Executor {
+		private final int lane;
+
+		Lane(int lane) {
+			this.lane = lane;
+		}
+
+		@SuppressWarnings("NullableProblems")
+		public void execute(Runnable runnable) {
+			Scheduler.this.execute(runnable, this.lane);
+		}
+	}
+
+	private class Worker extends Thread {
+		private final int index;
+		private final boolean spare;
+		private final ConcurrentLinkedQueue<Runnable>[] local;
+		private final AtomicBoolean idle = new AtomicBoolean();
+		private int threadPriority = Thread.NORM_PRIORITY;
+		private Runnable task;
+
+		@SuppressWarnings("unchecked")
+		Worker(int index, boolean spare) {
+			super((spare ? "mocha.foundation.scheduler spare #" : "mocha.foundation.scheduler #") + (index + 1));
+			this.index = index;
+			this.spare = spare;
+			this.local = new ConcurrentLinkedQueue[LANE_COUNT];
+
+			for (int lane = 0; lane < LANE_COUNT; lane++) {
+				this.local[lane] = new ConcurrentLinkedQueue<Runnable>();
+			}
+
+			this.setDaemon(true);
+		}
+
+		Scheduler getScheduler() {
+			return Scheduler.this;
+		}
+
+		boolean wake() {
+			if (this.idle.compareAndSet(true, false)) {
+				LockSupport.unpark(this);
+				return true;
+			} else {
+				return false;
+			}
+		}
+
+		public void run() {
+			while (true) {
+				int lane = this.find();
+
+				if (lane < 0) {
+					// Advertise ourselves as idle before the final check, so
+					// a task posted after it is guaranteed to wake us.
+					this.idle.set(true);
+					idleWorkers.offer(this);
+
+					if ((lane = this.find()) < 0) {
+						if (!this.spare) {
+							LockSupport.park(this);
+							this.idle.set(false);
+							continue;
+						}
+
+						LockSupport.parkNanos(this, SPARE_KEEP_ALIVE);
+
+						// Still idle means nobody woke us, so retire unless work just turned up
+						if (!this.idle.compareAndSet(true, false)) {
+							continue;
+						} else if ((lane = this.find()) < 0) {
+							spareWorkers.decrementAndGet();
+							return;
+						}
+					} else {
+						this.idle.set(false);
+					}
+				}
+
+				this.runTask(lane);
+
+				if (this.spare && retireSpare()) {
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Looks for the next task, highest lane first
+		 *
+		 * @return lane of the task found and stored in {@link #task}, or -1
+		 */
+		private int find() {
+			for (int lane = 0; lane < LANE_COUNT; lane++) {
+				if ((this.task = this.local[lane].poll()) != null || (this.task = lanes[lane].poll()) != null || (this.task = this.steal(lane)) != null) {
+					return lane;
+				}
+			}
+
+			return -1;
+		}
+
+		private Runnable steal(int lane) {
+			int count = workers.length;
+
+			for (int offset = this.spare ? 0 : 1; offset < count; offset++) {
+				Runnable task = workers[(this.index + offset) % count].local[lane].poll();
+
+				if (task != null) {
+					return task;
+				}
+			}
+
+			return null;
+		}
+
+		private void runTask(int lane) {
+			Runnable task = this.task;
+			this.task = null;
+
+			int threadPriority = lane == 0 ? Thread.MAX_PRIORITY : (lane == 2 ? Thread.MIN_PRIORITY : Thread.NORM_PRIORITY);
+
+			if (threadPriority != this.threadPriority) {
+				this.setPriority(threadPriority);
+				this.threadPriority = threadPriority;
+			}
+
+			try {
+				task.run();
+			} catch (Throwable t) {
+				MObject.MWarn(t, "Error executing on " + this.getName());
+			}
+		}
+	}
+
+}
@@ -1,14 +1,24 @@
 package mocha.foundation.concurrent;
 
-import java.util.ArrayDeque;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.Executor;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class SerialQueue extends BackgroundQueue {
+	private static final int DRAIN_LIMIT = 64;
 	private static Map<Priority, SerialQueue> globalQueues = new HashMap<>();
 
+	private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+	private final AtomicInteger pending = new AtomicInteger();
+	private final Priority priority;
+	private volatile Queue targetQueue;
+	private final Runnable drain = new InternalTask() {
+		public void run() {
+			drain();
+		}
+	};
+
 	/**
 	 * Get a global queue based on the priority you request
 	 * Queue's with higher priorities will have their tasks
@@ -23,7 +33,7 @@ public class SerialQueue extends BackgroundQueue {
 		SerialQueue globalQueue = globalQueues.get(priority);
 
 		if (globalQueue == null) {
-			globalQueue = new SerialQueue("mocha.foundation.global." + priority, priority, true);
+			globalQueue = new SerialQueue("mocha.foundation.global." + priority, priority);
 			globalQueues.put(priority, globalQueue);
 		}
 
@@ -36,55 +46,116 @@ public class SerialQueue extends BackgroundQueue {
 	 * @param label label for the queue, may be null
 	 */
 	public SerialQueue(String label) {
-		this(label, Priority.DEFAULT, false);
+		this(label, Priority.DEFAULT);
 	}
 
 	/**
 	 * Create a new queue
+	 * <p/>
+	 * The queue does not own any threads, it runs its tasks on the global
+	 * {@link ConcurrentQueue} for its priority until another target is set.
 	 *
 	 * @param label    label for the queue, may be null
 	 * @param priority Priority for the queue
+	 *
+	 * @see #setTargetQueue(Queue)
 	 */
 	public SerialQueue(String label, Priority priority) {
-		this(label, priority, false);
+		super(label);
+		this.priority = priority == null ? Priority.DEFAULT : priority;
+		this.targetQueue = ConcurrentQueue.getGlobalQueue(this.priority);
 	}
 
+	/**
+	 * Set the queue this queue runs its tasks on.
+	 * <p/>
+	 * Tasks are still executed one at a time and in the order they were
+	 * posted, regardless of whether the target queue is serial or concurrent.
+	 * This lets any number of serial queues share the threads of a single
+	 * concurrent queue.  Targets can be chained, but not in a cycle.
+	 *
+	 * @param targetQueue queue to run tasks on, or null to reset to the global
+	 *                    concurrent queue for this queue's priority
+	 */
+	public void setTargetQueue(Queue targetQueue) {
+		if (targetQueue == null) {
+			targetQueue = ConcurrentQueue.getGlobalQueue(this.priority);
+		}
+
+		Queue queue = targetQueue;
+
+		while (queue instanceof SerialQueue) {
+			if (queue == this) {
+				throw new RuntimeException("Setting " + targetQueue.getLabel() + " as the target queue of " + this.getLabel() + " would create a cycle.");
+			}
+
+			queue = ((SerialQueue) queue).targetQueue;
+		}
+
+		this.targetQueue = targetQueue;
+	}
 
 	/**
-	 * Create a new queue
+	 * Get the queue this queue runs its tasks on
 	 *
-	 * @param label    label for the queue, may be null
-	 * @param priority Priority for the queue
+	 * @return Target queue
 	 */
-	private SerialQueue(final String label, final Priority priority, final boolean global) {
-		super(new Executor() {
-			final ArrayDeque<Runnable> tasks = new ArrayDeque<Runnable>();
-			final ThreadPoolExecutor threadPoolExecutor = createSerialThreadPoolExecutor(label, priority, global);
-			Runnable active;
-
-			@SuppressWarnings("NullableProblems")
-			public synchronized void execute(final Runnable runnable) {
-				this.tasks.offer(new Runnable() {
-					public void run() {
-						try {
-							runnable.run();
-						} finally {
-							scheduleNext();
-						}
-					}
-				});
-
-				if (active == null) {
-					scheduleNext();
-				}
+	public Queue getTargetQueue() {
+		return this.targetQueue;
+	}
+
+	void enqueue(Runnable runnable) {
+		this.tasks.offer(this.track(runnable));
+
+		// Only the post that takes the queue from empty to non-empty
+		// hands a drain to the target queue, every other post just enqueues.
+		if (this.pending.getAndIncrement() == 0) {
+			this.scheduleDrain();
+		}
+	}
+
+	private void scheduleDrain() {
+		Queue targetQueue = this.targetQueue;
+
+		// A drain must never be dropped or blocked by a bounded target
+		if (targetQueue instanceof BackgroundQueue) {
+			((BackgroundQueue) targetQueue).enqueue(this.drain);
+		} else {
+			targetQueue.post(this.drain);
+		}
+	}
+
+	/**
+	 * Runs pending tasks in order on the calling thread.  Each pass runs
+	 * the tasks counted when it started, so a task is never polled before the
+	 * post that counted it, and the drain only exits once the count is back to
+	 * zero, at which point the next post will schedule a new one.
+	 * <p/>
+	 * After {@link #DRAIN_LIMIT} tasks the drain re-posts itself instead, so a
+	 * busy queue can't hold on to a shared target's thread indefinitely.
+	 */
+	private void drain() {
+		int remaining = this.pending.get();
+		int performed = 0;
+
+		while (true) {
+			int batch = Math.min(remaining, DRAIN_LIMIT - performed);
+
+			for (int i = 0; i < batch; i++) {
+				perform(this.tasks.poll());
 			}
 
-			protected synchronized void scheduleNext() {
-				if ((this.active = this.tasks.poll()) != null) {
-					this.threadPoolExecutor.execute(this.active);
-				}
+			performed += batch;
+
+			if ((remaining = this.pending.addAndGet(-batch)) == 0) {
+				return;
+			}
+
+			if (performed == DRAIN_LIMIT) {
+				this.scheduleDrain();
+				return;
 			}
-		}, label);
+		}
 	}
 
 }
@@ -0,0 +1,284 @@
+package mocha.foundation.concurrent;
+
+import mocha.foundation.MObject;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Shared timer for delayed work, built on a hashed timing wheel.
+ * <p/>
+ * Time is split into 10ms ticks spread over a fixed ring of buckets.  A
+ * timeout is filed in the bucket for its deadline along with the number of
+ * full turns of the wheel left before it's due, so scheduling and cancelling
+ * are both constant time regardless of how many timeouts are pending.  A
+ * single thread turns the wheel, sleeping until the next bucket that has
+ * anything in it, or indefinitely when nothing is scheduled.  Expired
+ * timeouts are posted to their queue, so the timer thread never runs any
+ * callbacks itself.
+ */
+public final class TimerWheel {
+	private static final long TICK = TimeUnit.MILLISECONDS.toNanos(10);
+	private static final int WHEEL_SIZE = 512;
+	private static final int MASK = WHEEL_SIZE - 1;
+	private static TimerWheel instance;
+
+	private final Timeout[] buckets = new Timeout[WHEEL_SIZE];
+	private final ConcurrentLinkedQueue<Timeout> scheduled = new ConcurrentLinkedQueue<Timeout>();
+	private final ConcurrentLinkedQueue<Timeout> cancelled = new ConcurrentLinkedQueue<Timeout>();
+	private final AtomicInteger count = new AtomicInteger();
+	private final long startTime = System.nanoTime();
+	private final Thread thread;
+
+	// Next tick to be processed, only touched by the timer thread
+	private long tick;
+
+	// Tick the timer thread is sleeping until
+	private volatile long wakeTick;
+
+	/**
+	 * A pending callback scheduled on a {@link TimerWheel}
+	 */
+	public static final class Timeout {
+		private static final int PENDING = 0;
+		private static final int CANCELLED = 1;
+		private static final int EXPIRED = 2;
+
+		private final TimerWheel timerWheel;
+		private final long deadline;
+		private final AtomicInteger state = new AtomicInteger(PENDING);
+		private Queue queue;
+		private Runnable runnable;
+
+		// Bucket bookkeeping, only touched by the timer thread
+		private long remainingRounds;
+		private int bucket = -1;
+		private Timeout previous;
+		private Timeout next;
+
+		private Timeout(TimerWheel timerWheel, long deadline, Queue queue, Runnable runnable) {
+			this.timerWheel = timerWheel;
+			this.deadline = deadline;
+			this.queue = queue;
+			this.runnable = runnable;
+		}
+
+		/**
+		 * Cancel the timeout
+		 *
+		 * @return true if the timeout was cancelled before it expired
+		 */
+		public boolean cancel() {
+			if (this.state.compareAndSet(PENDING, CANCELLED)) {
+				this.timerWheel.cancelled.offer(this);
+				return true;
+			} else {
+				return false;
+			}
+		}
+
+		/**
+		 * @return Whether or not the timeout was cancelled
+		 */
+		public boolean isCancelled() {
+			return this.state.get() == CANCELLED;
+		}
+
+		/**
+		 * @return Whether or not the timeout has expired and its callback posted
+		 */
+		public boolean isExpired() {
+			return this.state.get() == EXPIRED;
+		}
+
+		private void expire() {
+			if (this.state.compareAndSet(PENDING, EXPIRED)) {
+				Queue queue = this.queue;
+				Runnable runnable = this.runnable;
+				this.queue = null;
+				this.runnable = null;
+
+				try {
+					queue.postExpired(runnable);
+				} catch (Throwable t) {
+					MObject.MWarn(t, "Error posting timeout to queue " + queue.getLabel());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the shared timer wheel
+	 *
+	 * @return Timer wheel
+	 */
+	public static synchronized TimerWheel get() {
+		if (instance == null) {
+			instance = new TimerWheel();
+		}
+
+		return instance;
+	}
+
+	private TimerWheel() {
+		this.thread = new Thread(new Runnable() {
+			public void run() {
+				turn();
+			}
+		}, "mocha.foundation.timer");
+
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Post a task to a queue after a delay
+	 * <p/>
+	 * The task may be posted up to one tick (10ms) after the delay.
+	 *
+	 * @param delayInMillis time to wait before posting
+	 * @param queue         queue to post the task to
+	 * @param runnable      task to be executed
+	 *
+	 * @return Timeout that can be used to cancel the task
+	 */
+	public Timeout schedule(long delayInMillis, Queue queue, Runnable runnable) {
+		long deadline = System.nanoTime() - this.startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayInMillis));
+		Timeout timeout = new Timeout(this, deadline, queue, runnable);
+		boolean idle = this.count.getAndIncrement() == 0;
+
+		this.scheduled.offer(timeout);
+
+		// Wake the timer thread if it's parked with nothing to do, or
+		// sleeping until a bucket that comes after this timeout's.
+		if (idle || deadline / TICK < this.wakeTick) {
+			LockSupport.unpark(this.thread);
+		}
+
+		return timeout;
+	}
+
+	private void turn() {
+		while (true) {
+			this.transferScheduled();
+			this.removeCancelled();
+
+			long now = System.nanoTime() - this.startTime;
+
+			while ((this.tick + 1) * TICK <= now) {
+				this.expire(this.tick);
+				this.tick++;
+			}
+
+			// wakeTick is published before checking for newly scheduled
+			// timeouts, so either we see them or schedule() sees wakeTick.
+			if (this.count.get() == 0) {
+				this.wakeTick = Long.MAX_VALUE;
+
+				if (this.scheduled.isEmpty()) {
+					LockSupport.park(this);
+				}
+
+				// Nothing is in the wheel, so there's nothing to catch up on
+				this.tick = Math.max(this.tick, (System.nanoTime() - this.startTime) / TICK);
+			} else {
+				long wakeTick = this.nextOccupiedTick();
+				this.wakeTick = wakeTick;
+
+				if (this.scheduled.isEmpty() && this.cancelled.isEmpty()) {
+					long sleep = (wakeTick + 1) * TICK - (System.nanoTime() - this.startTime);
+
+					if (sleep > 0) {
+						LockSupport.parkNanos(this, sleep);
+					}
+				}
+			}
+		}
+	}
+
+	private void transferScheduled() {
+		Timeout timeout;
+
+		while ((timeout = this.scheduled.poll()) != null) {
+			if (timeout.state.get() != Timeout.PENDING) {
+				this.count.decrementAndGet();
+				continue;
+			}
+
+			long ticks = timeout.deadline / TICK;
+			timeout.remainingRounds = (ticks - this.tick) / WHEEL_SIZE;
+
+			int bucket = (int) (Math.max(ticks, this.tick) & MASK);
+			timeout.bucket = bucket;
+			timeout.next = this.buckets[bucket];
+
+			if (timeout.next != null) {
+				timeout.next.previous = timeout;
+			}
+
+			this.buckets[bucket] = timeout;
+		}
+	}
+
+	private void removeCancelled() {
+		Timeout timeout;
+
+		while ((timeout = this.cancelled.poll()) != null) {
+			if (timeout.bucket >= 0) {
+				this.unlink(timeout);
+			}
+
+			timeout.queue = null;
+			timeout.runnable = null;
+		}
+	}
+
+	private void expire(long tick) {
+		Timeout timeout = this.buckets[(int) (tick & MASK)];
+
+		while (timeout != null) {
+			Timeout next = timeout.next;
+
+			if (timeout.state.get() != Timeout.PENDING) {
+				this.unlink(timeout);
+			} else if (timeout.remainingRounds <= 0) {
+				this.unlink(timeout);
+				timeout.expire();
+			} else {
+				timeout.remainingRounds--;
+			}
+
+			timeout = next;
+		}
+	}
+
+	private void unlink(Timeout timeout) {
+		if (timeout.previous != null) {
+			timeout.previous.next = timeout.next;
+		} else {
+			this.buckets[timeout.bucket] = timeout.next;
+		}
+
+		if (timeout.next != null) {
+			timeout.next.previous = timeout.previous;
+		}
+
+		timeout.bucket = -1;
+		timeout.previous = null;
+		timeout.next = null;
+		this.count.decrementAndGet();
+	}
+
+	private long nextOccupiedTick() {
+		for (long tick = this.tick; tick < this.tick + WHEEL_SIZE; tick++) {
+			if (this.buckets[(int) (tick & MASK)] != null) {
+				return tick;
+			}
+		}
+
+		return this.tick + WHEEL_SIZE - 1;
+	}
+
+}
@@ -0,0 +1,201 @@
+package mocha.foundation.concurrent;
+
+import mocha.foundation.MObject;
+import mocha.foundation.ResultBlock;
+import mocha.foundation.TypedResultBlock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A task submitted to a queue that produces a result and can be cancelled
+ * before it starts.
+ *
+ * @param <T> result type
+ *
+ * @see Queue#submit(mocha.foundation.ResultBlock)
+ */
+public class WorkItem<T> extends MObject implements Runnable {
+	private static final int PENDING = 0;
+	private static final int RUNNING = 1;
+	private static final int FINISHED = 2;
+	private static final int FAILED = 3;
+	private static final int CANCELLED = 4;
+
+	private static final ThreadLocal<WorkItem<?>> current = new ThreadLocal<WorkItem<?>>();
+
+	private final Queue queue;
+	private final AtomicInteger state = new AtomicInteger(PENDING);
+	private ResultBlock<T> block;
+	private volatile T result;
+	private volatile Throwable error;
+	private volatile boolean cancelRequested;
+	private List<Runnable> continuations;
+
+	WorkItem(Queue queue, ResultBlock<T> block) {
+		this.queue = queue;
+		this.block = block;
+	}
+
+	/**
+	 * Get the work item running on the current thread, allowing long
+	 * running blocks to check whether they've been cancelled.
+	 *
+	 * @return Current work item, or null if not called from a work item
+	 */
+	public static WorkItem<?> current() {
+		return current.get();
+	}
+
+	public void run() {
+		if (!this.state.compareAndSet(PENDING, RUNNING)) {
+			return;
+		}
+
+		ResultBlock<T> block = this.block;
+		this.block = null;
+
+		WorkItem<?> previous = current.get();
+		current.set(this);
+
+		try {
+			this.result = block.block();
+			this.complete(FINISHED);
+		} catch (Throwable t) {
+			this.error = t;
+			this.complete(FAILED);
+			throw t;
+		} finally {
+			current.set(previous);
+		}
+	}
+
+	/**
+	 * Cancel the work item.  If it hasn't started yet, it's removed from
+	 * its queue and will never run.  If it's already running, it keeps
+	 * running but {@link #isCancelled()} will return true, so the block can
+	 * stop early.
+	 *
+	 * @return true if the work item was stopped before it started
+	 */
+	public boolean cancel() {
+		if (this.state.compareAndSet(PENDING, CANCELLED)) {
+			this.block = null;
+			this.queue.remove(this);
+			this.complete(CANCELLED);
+			return true;
+		} else {
+			this.cancelRequested = true;
+			return false;
+		}
+	}
+
+	/**
+	 * @return Whether or not {@link #cancel()} has been called
+	 */
+	public boolean isCancelled() {
+		return this.cancelRequested || this.state.get() == CANCELLED;
+	}
+
+	/**
+	 * @return Whether the work item has finished, failed or was cancelled before it started
+	 */
+	public boolean isDone() {
+		return this.state.get() >= FINISHED;
+	}
+
+	/**
+	 * @return Result of the block, or null if it hasn't finished
+	 */
+	public T getResult() {
+		return this.result;
+	}
+
+	/**
+	 * @return Throwable thrown by the block, or null if it hasn't failed
+	 */
+	public Throwable getError() {
+		return this.error;
+	}
+
+	/**
+	 * Run a block with the result of this work item on a queue once it
+	 * finishes, without blocking the current thread.
+	 * <p/>
+	 * If this work item fails or is cancelled, the continuation doesn't run
+	 * and fails or is cancelled in the same way.
+	 *
+	 * @param queue queue to execute the continuation on
+	 * @param block block to execute with the result
+	 * @param <R>   result type of the continuation
+	 *
+	 * @return Work item for the continuation
+	 */
+	public <R> WorkItem<R> then(final Queue queue, final TypedResultBlock<T, R> block) {
+		final WorkItem<R> next = new WorkItem<R>(queue, new ResultBlock<R>() {
+			public R block() {
+				return block.block(result);
+			}
+		});
+
+		this.addContinuation(new Runnable() {
+			public void run() {
+				switch (state.get()) {
+					case FINISHED:
+						queue.post(next);
+						break;
+					case FAILED:
+						if (next.state.compareAndSet(PENDING, FAILED)) {
+							next.block = null;
+							next.error = error;
+							next.complete(FAILED);
+						}
+						break;
+					default:
+						next.cancel();
+						break;
+				}
+			}
+		});
+
+		return next;
+	}
+
+	private void addContinuation(Runnable continuation) {
+		synchronized (this) {
+			if (!this.isDone()) {
+				if (this.continuations == null) {
+					this.continuations = new ArrayList<Runnable>(1);
+				}
+
+				this.continuations.add(continuation);
+				return;
+			}
+		}
+
+		continuation.run();
+	}
+
+	private void complete(int state) {
+		List<Runnable> continuations;
+
+		synchronized (this) {
+			this.state.set(state);
+			continuations = this.continuations;
+			this.continuations = null;
+		}
+
+		if (continuations != null) {
+			for (Runnable continuation : continuations) {
+				continuation.run();
+			}
+		}
+	}
+
+	protected String toStringExtra() {
+		String[] states = {"pending", "running", "finished", "failed", "cancelled"};
+		return "state = " + states[this.state.get()];
+	}
+
+}
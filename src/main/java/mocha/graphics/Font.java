@@ -4,12 +4,10 @@ import android.graphics.Typeface;
 import android.text.TextPaint;
 import android.util.FloatMath;
 import mocha.foundation.Copying;
+import mocha.foundation.collections.IntObjectHashMap;
 import mocha.ui.Application;
 import mocha.ui.Screen;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public final class Font implements Copying<Font> {
 	private final Typeface typeface;
 	private final float pointSize;
@@ -18,12 +16,12 @@ public final class Font implements Copying<Font> {
 	private final float descender;
 	private final float leading;
 
-	private Map<Float, TextPaint> cachedPaints;
+	private IntObjectHashMap<TextPaint> cachedPaints;
 
 	public Font(Typeface typeface, float pointSize) {
 		this.typeface = typeface;
 		this.pointSize = pointSize;
-		this.cachedPaints = new HashMap<Float, TextPaint>();
+		this.cachedPaints = new IntObjectHashMap<TextPaint>(2);
 
 		float screenScale = Screen.mainScreen().getScale();
 
@@ -56,7 +54,7 @@ public final class Font implements Copying<Font> {
 		this.descender = font.descender;
 		this.leading = font.leading;
 		this.lineHeight = font.lineHeight;
-		this.cachedPaints = new HashMap<Float, TextPaint>();
+		this.cachedPaints = new IntObjectHashMap<TextPaint>(2);
 	}
 
 	public static Font getSystemFontWithSize(float pointSize) {
@@ -96,11 +94,12 @@ public final class Font implements Copying<Font> {
 	}
 
 	TextPaint paintForScreenScale(float screenScale) {
-		TextPaint paint = this.cachedPaints.get(screenScale);
+		int key = Float.floatToIntBits(screenScale);
+		TextPaint paint = this.cachedPaints.get(key);
 
 		if (paint == null) {
 			paint = new TextPaint();
-			this.cachedPaints.put(screenScale, paint);
+			this.cachedPaints.put(key, paint);
 		} else {
 			paint.reset();
 		}
@@ -53,6 +53,14 @@ public class TableView extends ScrollView implements GestureRecognizer.Delegate
 			public float getHeightForRowAtIndexPath(TableView tableView, IndexPath indexPath);
 		}
 
+		/**
+		 * Same as {@link RowSizing}, without an IndexPath per row.  Takes
+		 * precedence over RowSizing if a delegate implements both.
+		 */
+		public interface RowHeights extends Delegate {
+			public float getHeightForRow(TableView tableView, int section, int row);
+		}
+
 		public interface RowDisplay extends Delegate {
 			public void willDisplayCell(TableView tableView, TableViewCell cell, IndexPath indexPath);
 
@@ -135,6 +143,7 @@ public class TableView extends ScrollView implements GestureRecognizer.Delegate
 
 	Delegate delegate;
 	Delegate.RowSizing delegateRowSizing;
+	Delegate.RowHeights delegateRowHeights;
 	Delegate.RowDisplay delegateRowDisplay;
 	Delegate.Selection delegateSelection;
 	Delegate.Deselection delegateDeselection;
@@ -328,6 +337,12 @@ public class TableView extends ScrollView implements GestureRecognizer.Delegate
 				this.delegateRowSizing = null;
 			}
 
+			if (delegate instanceof Delegate.RowHeights) {
+				this.delegateRowHeights = (Delegate.RowHeights) delegate;
+			} else {
+				this.delegateRowHeights = null;
+			}
+
 			if (delegate instanceof Delegate.RowDisplay) {
 				this.delegateRowDisplay = (Delegate.RowDisplay) delegate;
 			} else {
@@ -378,6 +393,7 @@ public class TableView extends ScrollView implements GestureRecognizer.Delegate
 		} else {
 			this.delegate = null;
 			this.delegateRowSizing = null;
+			this.delegateRowHeights = null;
 			this.delegateSelection = null;
 			this.delegateDeselection = null;
 			this.delegateHighlighting = null;
@@ -1,8 +1,8 @@
 package mocha.ui;
 
-import android.util.SparseArray;
 import mocha.foundation.IndexPath;
 import mocha.foundation.Range;
+import mocha.foundation.collections.IntObjectHashMap;
 import mocha.graphics.Point;
 import mocha.graphics.Rect;
 
@@ -20,16 +20,16 @@ class TableViewRowData {
 
 	private int lastGetGlobalRowsMiddleRow;
 	private int lastGetSectionsMiddleSection;
-	private SparseArray<Rect> cachedGlobalRects;
-	private SparseArray<Rect> cachedSectionRects;
+	private IntObjectHashMap<Rect> cachedGlobalRects;
+	private IntObjectHashMap<Rect> cachedSectionRects;
 
 	TableViewRowData(TableView tableView) {
 		this.tableView = tableView;
 		this.tableViewWidthDidChangeToWidth(this.tableView.getFrame().size.width);
 		this.sectionRowData = new TableViewSectionRowData[0];
 		this.lastGetGlobalRowsMiddleRow = -1;
-		this.cachedGlobalRects = new SparseArray<Rect>();
-		this.cachedSectionRects = new SparseArray<Rect>();
+		this.cachedGlobalRects = new IntObjectHashMap<Rect>();
+		this.cachedSectionRects = new IntObjectHashMap<Rect>();
 	}
 
 	public boolean isEmpty() {
@@ -154,14 +154,13 @@ class TableViewRowData {
 		return new Range(minRow, (maxRow - minRow) + 1);
 	}
 
-	private int[] getSectionRowForGlobalRow(int globalRow) {
+	public int getSectionForGlobalRow(int globalRow) {
 		int numberOfSections = this.getNumberOfSections();
 
 		if (numberOfSections == 0) {
-			return new int[]{-1, -1};
-		}
-		if (numberOfSections == 1) {
-			return new int[]{0, globalRow};
+			return -1;
+		} else if (numberOfSections == 1) {
+			return 0;
 		} else {
 			int section;
 
@@ -174,16 +173,28 @@ class TableViewRowData {
 				}
 			}
 
-			return new int[]{section, globalRow};
+			return section;
+		}
+	}
+
+	public int getRowForGlobalRow(int globalRow, int section) {
+		if (section < 0) {
+			return -1;
 		}
+
+		for (int i = 0; i < section && i < this.sectionRowData.length; i++) {
+			globalRow -= this.sectionRowData[i].numberOfRows;
+		}
+
+		return globalRow;
 	}
 
 	public Rect getRectForGlobalRow(int globalRow) {
 		Rect rect = this.cachedGlobalRects.get(globalRow);
 
 		if (rect == null) {
-			int[] sectionRow = this.getSectionRowForGlobalRow(globalRow);
-			rect = this.getRectForRow(sectionRow[0], sectionRow[1]);
+			int section = this.getSectionForGlobalRow(globalRow);
+			rect = this.getRectForRow(section, this.getRowForGlobalRow(globalRow, section));
 			this.cachedGlobalRects.put(globalRow, rect);
 		}
 
@@ -341,8 +352,8 @@ class TableViewRowData {
 	}
 
 	public IndexPath getIndexPathForRowAtGlobalRow(int globalRow) {
-		int[] sectionRow = this.getSectionRowForGlobalRow(globalRow);
-		return IndexPath.withRowInSection(sectionRow[1], sectionRow[0]);
+		int section = this.getSectionForGlobalRow(globalRow);
+		return IndexPath.withRowInSection(this.getRowForGlobalRow(globalRow, section), section);
 	}
 
 	public Rect getRectForRow(int section, int row) {
@@ -74,7 +74,7 @@ class TableViewSectionRowData {
 		//
 
 
-		boolean usesCustomRowHeights = tableView.delegateRowSizing != null;
+		boolean usesCustomRowHeights = tableView.delegateRowHeights != null || tableView.delegateRowSizing != null;
 		this.numberOfRows = tableView.dataSource.getNumberOfRowsInSection(tableView, section);
 		this.rowHeights = new float[this.numberOfRows];
 		this.rowOffsets = new float[this.numberOfRows];
@@ -82,10 +82,11 @@ class TableViewSectionRowData {
 
 		for (int i = 0; i < this.numberOfRows; i++) {
 			float rowHeight;
-			IndexPath indexPath = IndexPath.withRowInSection(i, section);
 
-			if (usesCustomRowHeights) {
-				rowHeight = tableView.delegateRowSizing.getHeightForRowAtIndexPath(tableView, indexPath);
+			if (tableView.delegateRowHeights != null) {
+				rowHeight = tableView.delegateRowHeights.getHeightForRow(tableView, section, i);
+			} else if (usesCustomRowHeights) {
+				rowHeight = tableView.delegateRowSizing.getHeightForRowAtIndexPath(tableView, IndexPath.withRowInSection(i, section));
 			} else {
 				rowHeight = defaultRowHeight;
 			}
@@ -6,6 +6,7 @@ import android.util.FloatMath;
 import android.view.ViewGroup;
 import mocha.animation.TimingFunction;
 import mocha.foundation.MObject;
+import mocha.foundation.concurrent.IdleQueue;
 import mocha.graphics.AffineTransform;
 import mocha.graphics.Point;
 import mocha.graphics.Rect;
@@ -523,6 +524,7 @@ class ViewAnimation extends MObject {
 
 			if (!scheduled) {
 				scheduled = true;
+				IdleQueue.get().suspend();
 				getHandler().postAtFrontOfQueue(processor);
 			}
 		}
@@ -668,6 +670,7 @@ class ViewAnimation extends MObject {
 			} else {
 				scheduled = false;
 				lastFrameTime = 0;
+				IdleQueue.get().resume();
 			}
 		}
 	}
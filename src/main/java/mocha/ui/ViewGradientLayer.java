@@ -2,6 +2,8 @@ package mocha.ui;
 
 import android.content.Context;
 import android.graphics.*;
+import mocha.foundation.collections.FloatArrayList;
+import mocha.foundation.collections.IntArrayList;
 import mocha.graphics.Point;
 
 import java.util.Arrays;
@@ -95,6 +97,11 @@ public class ViewGradientLayer extends ViewLayerNative {
 		this.invalidateGradient();
 	}
 
+	public void setColors(IntArrayList colors) {
+		this.colors = colors != null ? colors.toArray() : null;
+		this.invalidateGradient();
+	}
+
 	public float[] getLocations() {
 		if (this.locations != null) {
 			return Arrays.copyOf(this.locations, this.locations.length);
@@ -122,6 +129,11 @@ public class ViewGradientLayer extends ViewLayerNative {
 		this.invalidateGradient();
 	}
 
+	public void setLocations(FloatArrayList locations) {
+		this.locations = locations != null ? locations.toArray() : null;
+		this.invalidateGradient();
+	}
+
 	private void invalidateGradient() {
 		this.linearGradient = null;
 		this.setNeedsDisplay();